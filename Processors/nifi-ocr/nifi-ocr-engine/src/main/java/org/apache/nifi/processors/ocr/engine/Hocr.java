@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.ocr.engine;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Helpers for the hOCR Tesseract produces.
+ */
+public final class Hocr {
+
+    private static final Pattern BBOX = Pattern.compile("bbox (\\d+) (\\d+) (\\d+) (\\d+)");
+    private static final Pattern ID = Pattern.compile("(id=['\"][a-z]+_)\\d+");
+    private static final Pattern LINE = Pattern.compile(
+            "<(\\w+) class=['\"]ocr_(?:line|textfloat|header|caption)['\"][^>]*?bbox (\\d+) (\\d+) (\\d+) (\\d+)");
+    private static final Pattern PARAGRAPH = Pattern.compile("<(\\w+) class=['\"]ocr_par['\"]");
+    private static final Pattern AREA = Pattern.compile("<(\\w+) class=['\"]ocr_carea['\"]");
+
+    /**
+     * Decides from its bounding box whether a line is kept.
+     */
+    public interface BoxFilter {
+        boolean keeps(int left, int top, int right, int bottom);
+    }
+
+    private Hocr() {
+    }
+
+    /**
+     * Tesseract numbers the elements of the hOCR of every image it recognizes as page 1, e.g. 'page_1', 'line_1_3'.
+     *
+     * @return
+     *  The hOCR with the page number of every element id replaced, so the hOCR of several images can share a document.
+     */
+    public static String renumberIds(String hocr, int number) {
+        return ID.matcher(hocr).replaceAll("$1" + number);
+    }
+
+    /**
+     * @return
+     *  The hOCR without the lines the filter rejects, nor the paragraphs and areas left without lines.
+     */
+    public static String retainLines(String hocr, BoxFilter filter) {
+        final String lines = removeElements(hocr, LINE, filter, null);
+        return removeElements(removeElements(lines, PARAGRAPH, null, LINE), AREA, null, PARAGRAPH);
+    }
+
+    /**
+     * Removes the elements starting with a match of the pattern, along with their indentation and line break, whose
+     * bounding box the filter rejects or that hold no match of the required pattern.
+     */
+    private static String removeElements(String hocr, Pattern element, BoxFilter filter, Pattern required) {
+        final Matcher start = element.matcher(hocr);
+        final StringBuilder kept = new StringBuilder(hocr.length());
+        int from = 0;
+        while (start.find(from)) {
+            final int end = elementEnd(hocr, start.start(), start.group(1));
+            final boolean keep = filter != null
+                    ? filter.keeps(Integer.parseInt(start.group(2)), Integer.parseInt(start.group(3)),
+                            Integer.parseInt(start.group(4)), Integer.parseInt(start.group(5)))
+                    : required.matcher(hocr.substring(start.end(), end)).find();
+            if (keep) {
+                kept.append(hocr, from, start.end());
+                from = start.end();
+                continue;
+            }
+
+            int removeFrom = start.start();
+            while (removeFrom > from && hocr.charAt(removeFrom - 1) == ' ') {
+                removeFrom--;
+            }
+            kept.append(hocr, from, removeFrom);
+            from = end < hocr.length() && hocr.charAt(end) == '\n' ? end + 1 : end;
+        }
+        return kept.append(hocr, from, hocr.length()).toString();
+    }
+
+    /**
+     * @return
+     *  The index just past the tag closing the element that starts at the index.
+     */
+    private static int elementEnd(String hocr, int start, String tag) {
+        final Matcher tags = Pattern.compile("<(/?)" + tag + "\\b[^>]*?(/?)>").matcher(hocr);
+        int depth = 0;
+        int from = start;
+        while (tags.find(from)) {
+            if (!tags.group(1).isEmpty()) {
+                depth--;
+            } else if (tags.group(2).isEmpty()) {
+                depth++;
+            }
+            if (depth == 0) {
+                return tags.end();
+            }
+            from = tags.end();
+        }
+        return hocr.length();
+    }
+
+    /**
+     * @return
+     *  The hOCR with every bounding box scaled and then moved by the offset.
+     */
+    public static String transformBoxes(String hocr, double scale, int dx, int dy) {
+        final Matcher bbox = BBOX.matcher(hocr);
+        final StringBuffer transformed = new StringBuffer();
+        while (bbox.find()) {
+            bbox.appendReplacement(transformed, "bbox "
+                    + (dx + Math.round(scale * Integer.parseInt(bbox.group(1)))) + " "
+                    + (dy + Math.round(scale * Integer.parseInt(bbox.group(2)))) + " "
+                    + (dx + Math.round(scale * Integer.parseInt(bbox.group(3)))) + " "
+                    + (dy + Math.round(scale * Integer.parseInt(bbox.group(4)))));
+        }
+        bbox.appendTail(transformed);
+        return transformed.toString();
+    }
+}
@@ -0,0 +1,415 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.ocr.engine;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
+
+/**
+ * Cleans an image up for OCR: converts it to 8 bit luminance, downscales it, straightens it and binarizes it to
+ * a 1 bit image, in that order. All of the work is done on byte arrays that are kept and reused for the next
+ * image, as is the image handed back, so a preprocessor must only be used by one thread at a time and the image
+ * it returns is only valid until the next call.
+ */
+public class ImagePreprocessor {
+
+    public enum Binarization {
+        /** Leave the luminance as it is. */
+        NONE,
+        /** A single threshold for the whole image, chosen from its histogram. */
+        OTSU,
+        /** A threshold per pixel from the mean and deviation around it, for unevenly lit images such as photos. */
+        SAUVOLA
+    }
+
+    private static final double MAX_SKEW_DEGREES = 5.0;
+    private static final double SKEW_STEP_DEGREES = 0.25;
+    private static final int SAUVOLA_RADIUS = 12;
+    private static final double SAUVOLA_K = 0.34;
+
+    private final Binarization binarization;
+    private final boolean deskew;
+    private final double scale;
+
+    // Scratch buffers, grown as needed and reused across images
+    private byte[] pixels = new byte[0];
+    private byte[] work = new byte[0];
+    private int[] row = new int[0];
+    private int[] sums = new int[0];
+    private int[] counts = new int[0];
+    private long[] squares = new long[0];
+    private int[] dark = new int[0];
+    private int[] bins = new int[0];
+    private BufferedImage output;
+
+    private int width;
+    private int height;
+
+    /**
+     * @param binarization
+     *  How the luminance is turned into black and white, if at all.
+     * @param deskew
+     *  Rotate the image so lines of text are horizontal.
+     * @param scale
+     *  Factor the image is downscaled by, 1 to keep its size. Images are never enlarged.
+     */
+    public ImagePreprocessor(Binarization binarization, boolean deskew, double scale) {
+        this.binarization = binarization;
+        this.deskew = deskew;
+        this.scale = Math.min(1.0, scale);
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * @return
+     *  The preprocessed image, 1 bit when binarized and 8 bit gray otherwise.
+     */
+    public BufferedImage process(BufferedImage image) {
+        luminance(image);
+        if (scale < 1.0) {
+            downscale(Math.max(1, (int) Math.round(width * scale)), Math.max(1, (int) Math.round(height * scale)));
+        }
+        if (deskew) {
+            final double angle = estimateSkew(otsuThreshold());
+            if (Math.abs(angle) >= SKEW_STEP_DEGREES / 2) {
+                rotate(-angle);
+            }
+        }
+
+        switch (binarization) {
+            case OTSU:
+                return toBinary(otsuThreshold());
+            case SAUVOLA:
+                sauvola();
+                return toBinary(128);
+            default:
+                return toGray();
+        }
+    }
+
+    /**
+     * Reads the image's luminance, with the ITU-R BT.601 weights, into 'pixels'.
+     */
+    private void luminance(BufferedImage image) {
+        width = image.getWidth();
+        height = image.getHeight();
+        pixels = ensure(pixels, width * height);
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            image.getRaster().getDataElements(0, 0, width, height, pixels);
+            return;
+        }
+
+        row = ensure(row, width);
+        for (int y = 0, i = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                final int rgb = row[x];
+                pixels[i++] = (byte) ((77 * ((rgb >> 16) & 0xff) + 150 * ((rgb >> 8) & 0xff) + 29 * (rgb & 0xff)) >> 8);
+            }
+        }
+    }
+
+    /**
+     * Shrinks 'pixels' by averaging the source pixels that fall within each target pixel.
+     */
+    private void downscale(int targetWidth, int targetHeight) {
+        work = ensure(work, targetWidth * targetHeight);
+        sums = ensure(sums, targetWidth);
+        counts = ensure(counts, targetWidth);
+        Arrays.fill(sums, 0, targetWidth, 0);
+        Arrays.fill(counts, 0, targetWidth, 0);
+        row = ensure(row, width);
+        for (int x = 0; x < width; x++) {
+            row[x] = (int) ((long) x * targetWidth / width);
+        }
+
+        int targetY = 0;
+        for (int y = 0; y < height; y++) {
+            final int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                sums[row[x]] += pixels[offset + x] & 0xff;
+                counts[row[x]]++;
+            }
+            final int nextTargetY = y + 1 < height ? (int) ((long) (y + 1) * targetHeight / height) : targetHeight;
+            if (nextTargetY != targetY) {
+                final int targetOffset = targetY * targetWidth;
+                for (int x = 0; x < targetWidth; x++) {
+                    work[targetOffset + x] = (byte) (sums[x] / counts[x]);
+                    sums[x] = 0;
+                    counts[x] = 0;
+                }
+                targetY = nextTargetY;
+            }
+        }
+
+        swap();
+        width = targetWidth;
+        height = targetHeight;
+    }
+
+    /**
+     * @return
+     *  The threshold that best separates the two classes of the luminance histogram, by Otsu's method.
+     */
+    private int otsuThreshold() {
+        final int[] histogram = new int[256];
+        final int size = width * height;
+        for (int i = 0; i < size; i++) {
+            histogram[pixels[i] & 0xff]++;
+        }
+
+        long total = 0;
+        for (int i = 0; i < 256; i++) {
+            total += (long) i * histogram[i];
+        }
+        long backgroundSum = 0;
+        int backgroundCount = 0;
+        double bestVariance = -1;
+        int bestLow = 127;
+        int bestHigh = 127;
+        for (int t = 0; t < 256; t++) {
+            backgroundCount += histogram[t];
+            if (backgroundCount == 0) {
+                continue;
+            }
+            final int foregroundCount = size - backgroundCount;
+            if (foregroundCount == 0) {
+                break;
+            }
+            backgroundSum += (long) t * histogram[t];
+            final double backgroundMean = (double) backgroundSum / backgroundCount;
+            final double foregroundMean = (double) (total - backgroundSum) / foregroundCount;
+            final double variance = (double) backgroundCount * foregroundCount * (backgroundMean - foregroundMean) * (backgroundMean - foregroundMean);
+            if (variance > bestVariance) {
+                bestVariance = variance;
+                bestLow = t;
+                bestHigh = t;
+            } else if (variance == bestVariance) {
+                bestHigh = t;
+            }
+        }
+        //Empty bins between the classes leave a run of equally good thresholds, split it in the middle
+        return (bestLow + bestHigh) / 2 + 1;
+    }
+
+    /**
+     * Finds the angle, in degrees, at which the horizontal projection of the dark pixels is sharpest, which is when
+     * the projection runs along the lines of text.
+     */
+    private double estimateSkew(int threshold) {
+        //Sample the dark pixels on a coarse grid, enough to find the lines of text
+        final int step = Math.max(1, (int) Math.sqrt((double) width * height / 1000000));
+        int count = 0;
+        for (int y = 0; y < height; y += step) {
+            final int offset = y * width;
+            for (int x = 0; x < width; x += step) {
+                if ((pixels[offset + x] & 0xff) < threshold) {
+                    dark = ensure(dark, count * 2 + 2, count * 2);
+                    dark[count * 2] = x;
+                    dark[count * 2 + 1] = y;
+                    count++;
+                }
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        final int margin = (int) Math.ceil(width * Math.tan(Math.toRadians(MAX_SKEW_DEGREES)));
+        final int binCount = (height + 2 * margin) / step + 1;
+        bins = ensure(bins, binCount);
+        double bestAngle = 0;
+        long bestScore = -1;
+        for (double angle = -MAX_SKEW_DEGREES; angle <= MAX_SKEW_DEGREES + 1e-9; angle += SKEW_STEP_DEGREES) {
+            final double tan = Math.tan(Math.toRadians(angle));
+            Arrays.fill(bins, 0, binCount, 0);
+            for (int i = 0; i < count; i++) {
+                bins[(int) (dark[i * 2 + 1] - dark[i * 2] * tan + margin) / step]++;
+            }
+            long score = 0;
+            for (int i = 0; i < binCount; i++) {
+                score += (long) bins[i] * bins[i];
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                bestAngle = angle;
+            }
+        }
+        return bestAngle;
+    }
+
+    /**
+     * Rotates 'pixels' about the center by the angle in degrees, filling the uncovered corners with white.
+     */
+    private void rotate(double degrees) {
+        work = ensure(work, width * height);
+        final double sin = Math.sin(Math.toRadians(degrees));
+        final double cos = Math.cos(Math.toRadians(degrees));
+        final double centerX = width / 2.0;
+        final double centerY = height / 2.0;
+        for (int y = 0, i = 0; y < height; y++) {
+            final double dy = y - centerY;
+            for (int x = 0; x < width; x++) {
+                final double dx = x - centerX;
+                //Bilinear sample of the source pixel that rotates onto (x, y)
+                final double sx = cos * dx + sin * dy + centerX;
+                final double sy = -sin * dx + cos * dy + centerY;
+                final int x0 = (int) Math.floor(sx);
+                final int y0 = (int) Math.floor(sy);
+                if (x0 < 0 || y0 < 0 || x0 + 1 >= width || y0 + 1 >= height) {
+                    work[i++] = (byte) 255;
+                    continue;
+                }
+                final double fx = sx - x0;
+                final double fy = sy - y0;
+                final int offset = y0 * width + x0;
+                final double top = (pixels[offset] & 0xff) * (1 - fx) + (pixels[offset + 1] & 0xff) * fx;
+                final double bottom = (pixels[offset + width] & 0xff) * (1 - fx) + (pixels[offset + width + 1] & 0xff) * fx;
+                work[i++] = (byte) (int) (top * (1 - fy) + bottom * fy + 0.5);
+            }
+        }
+        swap();
+    }
+
+    /**
+     * Binarizes 'pixels' in place to 0 or 255 with Sauvola's method. The means and deviations are computed over a
+     * window sliding down the image, from per column sums, so the scratch space needed only grows with the width.
+     */
+    private void sauvola() {
+        work = ensure(work, width * height);
+        sums = ensure(sums, width);
+        squares = ensure(squares, width);
+        Arrays.fill(sums, 0, width, 0);
+        Arrays.fill(squares, 0, width, 0);
+
+        // Prime the columns with the rows above the first window's center
+        for (int y = 0; y < Math.min(SAUVOLA_RADIUS, height); y++) {
+            addRow(y, 1);
+        }
+        for (int y = 0; y < height; y++) {
+            if (y + SAUVOLA_RADIUS < height) {
+                addRow(y + SAUVOLA_RADIUS, 1);
+            }
+            if (y - SAUVOLA_RADIUS - 1 >= 0) {
+                addRow(y - SAUVOLA_RADIUS - 1, -1);
+            }
+            final int rows = Math.min(height - 1, y + SAUVOLA_RADIUS) - Math.max(0, y - SAUVOLA_RADIUS) + 1;
+
+            long sum = 0;
+            long square = 0;
+            for (int x = 0; x < Math.min(SAUVOLA_RADIUS, width); x++) {
+                sum += sums[x];
+                square += squares[x];
+            }
+            final int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                if (x + SAUVOLA_RADIUS < width) {
+                    sum += sums[x + SAUVOLA_RADIUS];
+                    square += squares[x + SAUVOLA_RADIUS];
+                }
+                if (x - SAUVOLA_RADIUS - 1 >= 0) {
+                    sum -= sums[x - SAUVOLA_RADIUS - 1];
+                    square -= squares[x - SAUVOLA_RADIUS - 1];
+                }
+                final int n = rows * (Math.min(width - 1, x + SAUVOLA_RADIUS) - Math.max(0, x - SAUVOLA_RADIUS) + 1);
+                final double mean = (double) sum / n;
+                final double deviation = Math.sqrt(Math.max(0, (double) square / n - mean * mean));
+                final double threshold = mean * (1 + SAUVOLA_K * (deviation / 128 - 1));
+                work[offset + x] = (pixels[offset + x] & 0xff) < threshold ? 0 : (byte) 255;
+            }
+        }
+        swap();
+    }
+
+    private void addRow(int y, int sign) {
+        final int offset = y * width;
+        for (int x = 0; x < width; x++) {
+            final int value = pixels[offset + x] & 0xff;
+            sums[x] += sign * value;
+            squares[x] += sign * value * value;
+        }
+    }
+
+    /**
+     * @return
+     *  'pixels' packed into a 1 bit image, white where the luminance is at or above the threshold.
+     */
+    private BufferedImage toBinary(int threshold) {
+        final BufferedImage image = output(BufferedImage.TYPE_BYTE_BINARY);
+        final byte[] packed = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        final int stride = (width + 7) / 8;
+        Arrays.fill(packed, (byte) 0);
+        for (int y = 0; y < height; y++) {
+            final int offset = y * width;
+            final int packedOffset = y * stride;
+            for (int x = 0; x < width; x++) {
+                if ((pixels[offset + x] & 0xff) >= threshold) {
+                    packed[packedOffset + (x >> 3)] |= 0x80 >> (x & 7);
+                }
+            }
+        }
+        return image;
+    }
+
+    private BufferedImage toGray() {
+        final BufferedImage image = output(BufferedImage.TYPE_BYTE_GRAY);
+        System.arraycopy(pixels, 0, ((DataBufferByte) image.getRaster().getDataBuffer()).getData(), 0, width * height);
+        return image;
+    }
+
+    private BufferedImage output(int type) {
+        if (output == null || output.getType() != type || output.getWidth() != width || output.getHeight() != height) {
+            output = new BufferedImage(width, height, type);
+        }
+        return output;
+    }
+
+    private void swap() {
+        final byte[] previous = pixels;
+        pixels = work;
+        work = previous;
+    }
+
+    private static byte[] ensure(byte[] buffer, int size) {
+        return buffer.length >= size ? buffer : new byte[size];
+    }
+
+    private static int[] ensure(int[] buffer, int size) {
+        return buffer.length >= size ? buffer : new int[size];
+    }
+
+    /**
+     * Grows the buffer, keeping the first 'used' values.
+     */
+    private static int[] ensure(int[] buffer, int size, int used) {
+        if (buffer.length >= size) {
+            return buffer;
+        }
+        final int[] grown = new int[Math.max(size, buffer.length * 2)];
+        System.arraycopy(buffer, 0, grown, 0, used);
+        return grown;
+    }
+
+    private static long[] ensure(long[] buffer, int size) {
+        return buffer.length >= size ? buffer : new long[size];
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.ocr.engine;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.jna.Pointer;
+
+import net.sourceforge.tess4j.ITessAPI;
+import net.sourceforge.tess4j.ITessAPI.TessBaseAPI;
+import net.sourceforge.tess4j.ITessAPI.TessPageIterator;
+import net.sourceforge.tess4j.ITessAPI.TessPageIteratorLevel;
+import net.sourceforge.tess4j.ITessAPI.TessResultIterator;
+import net.sourceforge.tess4j.TessAPI1;
+
+/**
+ * Runs OCR through a native TessBaseAPI handle that is initialized once, when the engine is created, and kept until
+ * the engine is closed. Tess4J's Tesseract initializes the API, loading the language's traineddata, and ends it again
+ * on every call, which dominates the cost of OCR on small images. This engine only sets the image and reads the results
+ * for each call.
+ */
+public class NativeTessOcrEngine implements OcrEngine {
+
+    private final TessBaseAPI handle;
+    private ByteBuffer pixels = ByteBuffer.allocateDirect(0); // Reused across images, the engine is only used by one thread at a time.
+
+    /**
+     * @param datapath
+     *  Tessdata directory holding the language's traineddata file.
+     * @param language
+     *  Tesseract language, e.g. 'eng'.
+     * @param pageSegMode
+     *  Tesseract page segmentation mode.
+     * @param variables
+     *  Tesseract configuration variables.
+     *
+     * @throws OcrException
+     *  If the API can not be initialized, e.g. because the language is not installed in the Tessdata directory.
+     */
+    public NativeTessOcrEngine(String datapath, String language, int pageSegMode, Map<String, String> variables) throws OcrException {
+        this.handle = TessAPI1.TessBaseAPICreate();
+        if (TessAPI1.TessBaseAPIInit3(handle, datapath, language) != 0) {
+            TessAPI1.TessBaseAPIDelete(handle);
+            throw new OcrException("Unable to initialize Tesseract with language '" + language + "' from " + datapath);
+        }
+        TessAPI1.TessBaseAPISetPageSegMode(handle, pageSegMode);
+        for (Map.Entry<String, String> entry : variables.entrySet()) {
+            if (TessAPI1.TessBaseAPISetVariable(handle, entry.getKey(), entry.getValue()) == 0) {
+                close();
+                throw new OcrException("Unknown Tesseract configuration value '" + entry.getKey() + "'");
+            }
+        }
+    }
+
+    @Override
+    public OcrResult recognize(BufferedImage image, boolean layout) throws OcrException {
+        setImage(image);
+        try {
+            // Everything below reads the results of this one recognition
+            if (TessAPI1.TessBaseAPIRecognize(handle, null) != 0) {
+                throw new OcrException("Tesseract failed to recognize the image");
+            }
+            final String text = takeText(TessAPI1.TessBaseAPIGetUTF8Text(handle));
+            final int meanConfidence = TessAPI1.TessBaseAPIMeanTextConf(handle);
+            if (!layout) {
+                return new OcrResult(text, meanConfidence, Collections.<OcrWord>emptyList(), null);
+            }
+            return new OcrResult(text, meanConfidence, readWords(), takeText(TessAPI1.TessBaseAPIGetHOCRText(handle, 0)));
+        } finally {
+            // Frees the recognition results but keeps the API initialized
+            TessAPI1.TessBaseAPIClear(handle);
+        }
+    }
+
+    /**
+     * Walks the recognized words with a result iterator, numbering them the way Tesseract's TSV output does.
+     */
+    private List<OcrWord> readWords() {
+        final List<OcrWord> words = new ArrayList<>();
+        final TessResultIterator iterator = TessAPI1.TessBaseAPIGetIterator(handle);
+        if (iterator == null) {
+            return words;
+        }
+        try {
+            final TessPageIterator pageIterator = TessAPI1.TessResultIteratorGetPageIterator(iterator);
+            final IntBuffer left = IntBuffer.allocate(1);
+            final IntBuffer top = IntBuffer.allocate(1);
+            final IntBuffer right = IntBuffer.allocate(1);
+            final IntBuffer bottom = IntBuffer.allocate(1);
+            int block = 0;
+            int paragraph = 0;
+            int line = 0;
+            int word = 0;
+            do {
+                if (TessAPI1.TessPageIteratorIsAtBeginningOf(pageIterator, TessPageIteratorLevel.RIL_BLOCK) == ITessAPI.TRUE) {
+                    block++;
+                    paragraph = 0;
+                }
+                if (TessAPI1.TessPageIteratorIsAtBeginningOf(pageIterator, TessPageIteratorLevel.RIL_PARA) == ITessAPI.TRUE) {
+                    paragraph++;
+                    line = 0;
+                }
+                if (TessAPI1.TessPageIteratorIsAtBeginningOf(pageIterator, TessPageIteratorLevel.RIL_TEXTLINE) == ITessAPI.TRUE) {
+                    line++;
+                    word = 0;
+                }
+                word++;
+
+                final Pointer wordText = TessAPI1.TessResultIteratorGetUTF8Text(iterator, TessPageIteratorLevel.RIL_WORD);
+                if (wordText == null) {
+                    continue;
+                }
+                final String text;
+                try {
+                    text = wordText.getString(0, "UTF-8");
+                } finally {
+                    TessAPI1.TessDeleteText(wordText);
+                }
+                TessAPI1.TessPageIteratorBoundingBox(pageIterator, TessPageIteratorLevel.RIL_WORD, left, top, right, bottom);
+                words.add(new OcrWord(text, TessAPI1.TessResultIteratorConfidence(iterator, TessPageIteratorLevel.RIL_WORD),
+                        left.get(0), top.get(0), right.get(0) - left.get(0), bottom.get(0) - top.get(0),
+                        block, paragraph, line, word));
+            } while (TessAPI1.TessResultIteratorNext(iterator, TessPageIteratorLevel.RIL_WORD) == ITessAPI.TRUE);
+        } finally {
+            TessAPI1.TessResultIteratorDelete(iterator);
+        }
+        return words;
+    }
+
+    /**
+     * @return
+     *  The text Tesseract allocated, which is freed.
+     */
+    private static String takeText(Pointer text) throws OcrException {
+        if (text == null) {
+            throw new OcrException("Tesseract failed to recognize the image");
+        }
+        try {
+            return text.getString(0, "UTF-8");
+        } finally {
+            TessAPI1.TessDeleteText(text);
+        }
+    }
+
+    @Override
+    public void close() {
+        TessAPI1.TessBaseAPIEnd(handle);
+        TessAPI1.TessBaseAPIDelete(handle);
+    }
+
+    /**
+     * Hands the image's pixels to Tesseract, as 1 bit or 8 bit gray when the image already is and as 24 bit RGB otherwise.
+     */
+    private void setImage(BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        if (isPackedBinary(image)) {
+            // Tesseract takes 1 bit rows packed most significant bit first with 1 as white, the same as Java's
+            final MultiPixelPackedSampleModel model = (MultiPixelPackedSampleModel) image.getSampleModel();
+            final byte[] packed = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            final int bytesPerLine = (width + 7) / 8;
+            final ByteBuffer buffer = scratch(bytesPerLine * height);
+            for (int y = 0; y < height; y++) {
+                buffer.put(packed, y * model.getScanlineStride(), bytesPerLine);
+            }
+            buffer.flip();
+            TessAPI1.TessBaseAPISetImage(handle, buffer, width, height, 0, bytesPerLine);
+            return;
+        }
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            // Copied row by row since the raster may be a sub-image of a larger one
+            final ByteBuffer buffer = scratch(width * height);
+            final byte[] gray = new byte[width];
+            for (int y = 0; y < height; y++) {
+                image.getRaster().getDataElements(0, y, width, 1, gray);
+                buffer.put(gray);
+            }
+            buffer.flip();
+            TessAPI1.TessBaseAPISetImage(handle, buffer, width, height, 1, width);
+            return;
+        }
+
+        final ByteBuffer buffer = scratch(width * height * 3);
+        final int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int argb : row) {
+                buffer.put((byte) (argb >> 16)).put((byte) (argb >> 8)).put((byte) argb);
+            }
+        }
+        buffer.flip();
+        TessAPI1.TessBaseAPISetImage(handle, buffer, width, height, 3, width * 3);
+    }
+
+    /**
+     * @return
+     *  Whether the image is a whole, not a sub-image, 1 bit black and white image.
+     */
+    private static boolean isPackedBinary(BufferedImage image) {
+        if (image.getType() != BufferedImage.TYPE_BYTE_BINARY
+                || !(image.getSampleModel() instanceof MultiPixelPackedSampleModel)
+                || !(image.getColorModel() instanceof IndexColorModel)) {
+            return false;
+        }
+        final MultiPixelPackedSampleModel model = (MultiPixelPackedSampleModel) image.getSampleModel();
+        final IndexColorModel colors = (IndexColorModel) image.getColorModel();
+        return model.getPixelBitStride() == 1
+                && model.getDataBitOffset() == 0
+                && image.getRaster().getSampleModelTranslateX() == 0
+                && image.getRaster().getSampleModelTranslateY() == 0
+                && colors.getMapSize() == 2
+                && (colors.getRGB(0) & 0xffffff) == 0
+                && (colors.getRGB(1) & 0xffffff) == 0xffffff;
+    }
+
+    private ByteBuffer scratch(int capacity) {
+        if (pixels.capacity() < capacity) {
+            pixels = ByteBuffer.allocateDirect(capacity);
+        }
+        pixels.clear();
+        return pixels;
+    }
+}
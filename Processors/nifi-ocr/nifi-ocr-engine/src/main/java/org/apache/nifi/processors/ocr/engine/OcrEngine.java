@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.ocr.engine;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A configured OCR engine. Engines are not thread safe, each one must only be used by one thread at a time which
+ * is what {@link OcrEnginePool} is for.
+ */
+public interface OcrEngine extends AutoCloseable {
+
+    /**
+     * @param layout
+     *  Also read the words, with their bounding boxes and confidences, and the hOCR from the recognition.
+     *
+     * @return
+     *  What was recognized in the image.
+     *
+     * @throws OcrException
+     *  If recognition fails, or if the layout is asked for and the engine can not provide it.
+     */
+    OcrResult recognize(BufferedImage image, boolean layout) throws OcrException;
+
+    /**
+     * Releases any native resources held by the engine.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.ocr.engine;
+
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of OCR engines with the same configuration. Engines are created on demand up to the maximum size
+ * and then reused, so each engine is only ever used by the thread that borrowed it. Callers borrow an engine for
+ * each image and must give it back when done:
+ *
+ * <pre>
+ * OcrEngine engine = pool.borrow();
+ * try {
+ *     text = engine.recognize(image);
+ * } finally {
+ *     pool.giveBack(engine);
+ * }
+ * </pre>
+ * <p>
+ * Pools may share a {@link Limit} on the number of engines they hold together. A pool that needs a new engine when
+ * the limit is reached closes an idle engine of another pool to make room, or waits until one is idle.
+ */
+public class OcrEnginePool implements AutoCloseable {
+
+    private static final long LIMIT_WAIT_MILLIS = 100;
+
+    /**
+     * Creates configured engines for a pool.
+     */
+    public interface Factory {
+        OcrEngine create() throws OcrException;
+    }
+
+    /**
+     * Maximum number of engines held by all of the pools sharing it.
+     */
+    public static final class Limit {
+        private final int maxEngines;
+        private final AtomicInteger created = new AtomicInteger();
+        private final Set<OcrEnginePool> pools = ConcurrentHashMap.newKeySet();
+
+        public Limit(int maxEngines) {
+            if (maxEngines < 1) {
+                throw new IllegalArgumentException("Engine limit must be at least 1");
+            }
+            this.maxEngines = maxEngines;
+        }
+
+        /**
+         * Reserves room for a new engine of the pool, closing idle engines of other pools if evict is set and the
+         * limit has been reached.
+         *
+         * @return
+         *  false if the limit has been reached and there was no idle engine to close.
+         */
+        boolean acquire(OcrEnginePool requester, boolean evict) {
+            while (true) {
+                final int count = created.get();
+                if (count < maxEngines) {
+                    if (created.compareAndSet(count, count + 1)) {
+                        return true;
+                    }
+                } else if (!evict || !evictIdle(requester)) {
+                    return false;
+                }
+            }
+        }
+
+        private boolean evictIdle(OcrEnginePool requester) {
+            for (OcrEnginePool pool : pools) {
+                if (pool == requester) {
+                    continue;
+                }
+                final OcrEngine engine = pool.idle.poll();
+                if (engine != null) {
+                    pool.discard(engine);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void release() {
+            created.decrementAndGet();
+        }
+
+        public int getCreated() {
+            return created.get();
+        }
+    }
+
+    private final Factory factory;
+    private final int maxSize;
+    private final Limit limit;
+    private final BlockingQueue<OcrEngine> idle = new LinkedBlockingQueue<>();
+    private final AtomicInteger created = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    public OcrEnginePool(Factory factory, int maxSize) {
+        this(factory, maxSize, null);
+    }
+
+    /**
+     * @param limit
+     *  Limit shared with other pools, or null if the pool is only bounded by its maximum size.
+     */
+    public OcrEnginePool(Factory factory, int maxSize, Limit limit) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        this.factory = factory;
+        this.maxSize = maxSize;
+        this.limit = limit;
+        if (limit != null) {
+            limit.pools.add(this);
+        }
+    }
+
+    /**
+     * Returns an idle engine, creates one if the pool is not yet full, or otherwise waits for one to be given back.
+     * When the shared limit is reached and no other pool has an idle engine to close, it waits for either.
+     *
+     * @throws OcrException
+     *  If a new engine can not be created.
+     * @throws InterruptedException
+     *  If interrupted while waiting for an engine.
+     */
+    public OcrEngine borrow() throws OcrException, InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("OCR engine pool has been closed");
+        }
+
+        OcrEngine engine = idle.poll();
+        if (engine != null) {
+            return engine;
+        }
+
+        while (true) {
+            final int count = created.get();
+            if (count >= maxSize && limit == null) {
+                return idle.take();
+            }
+            // Other pools may close this pool's idle engines, so waits are timed to recheck the count
+            if (count >= maxSize || limit != null && !limit.acquire(this, true)) {
+                engine = idle.poll(LIMIT_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                if (engine != null) {
+                    return engine;
+                }
+                continue;
+            }
+            if (created.compareAndSet(count, count + 1)) {
+                try {
+                    return factory.create();
+                } catch (OcrException | RuntimeException e) {
+                    created.decrementAndGet();
+                    release();
+                    throw e;
+                }
+            }
+            release();
+        }
+    }
+
+    /**
+     * Creates engines until the pool holds the given number, or is full, so the first images do not wait for
+     * engines to initialize. Stops early rather than close engines of other pools once the shared limit is reached.
+     *
+     * @throws OcrException
+     *  If an engine can not be created.
+     */
+    public void prestart(int count) throws OcrException {
+        final int target = Math.min(count, maxSize);
+        while (true) {
+            final int current = created.get();
+            if (current >= target || limit != null && !limit.acquire(this, false)) {
+                return;
+            }
+            if (created.compareAndSet(current, current + 1)) {
+                final OcrEngine engine;
+                try {
+                    engine = factory.create();
+                } catch (OcrException | RuntimeException e) {
+                    created.decrementAndGet();
+                    release();
+                    throw e;
+                }
+                giveBack(engine);
+            } else {
+                release();
+            }
+        }
+    }
+
+    /**
+     * Returns an engine obtained from {@link #borrow()} to the pool, or closes it if the pool has been closed.
+     */
+    public void giveBack(OcrEngine engine) {
+        if (closed) {
+            discard(engine);
+            return;
+        }
+        idle.offer(engine);
+        if (closed && idle.remove(engine)) {
+            // Closed while it was being offered
+            discard(engine);
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Closes the idle engines. Borrowed engines are closed when they are given back.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (limit != null) {
+            limit.pools.remove(this);
+        }
+        OcrEngine engine;
+        while ((engine = idle.poll()) != null) {
+            discard(engine);
+        }
+    }
+
+    /**
+     * Closes an engine that is no longer idle or borrowed, making room for a new one.
+     */
+    private void discard(OcrEngine engine) {
+        engine.close();
+        created.decrementAndGet();
+        release();
+    }
+
+    private void release() {
+        if (limit != null) {
+            limit.release();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.ocr.engine;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Immutable, fully resolved configuration of an OCR engine. Engines created from equal specs are interchangeable,
+ * so a spec identifies the pool an engine belongs to.
+ */
+public final class OcrEngineSpec {
+
+    private final String datapath;
+    private final String language;
+    private final int pageSegMode;
+    private final Map<String, String> variables;
+    private final boolean nativeApi;
+
+    /**
+     * @param datapath
+     *  Tessdata directory holding the language's traineddata file.
+     * @param language
+     *  Tesseract language, e.g. 'eng'.
+     * @param pageSegMode
+     *  Tesseract page segmentation mode.
+     * @param variables
+     *  Tesseract configuration variables. The map is copied.
+     * @param nativeApi
+     *  Create {@link NativeTessOcrEngine}s rather than {@link Tess4jOcrEngine}s.
+     */
+    public OcrEngineSpec(String datapath, String language, int pageSegMode, Map<String, String> variables, boolean nativeApi) {
+        this.datapath = datapath;
+        this.language = language;
+        this.pageSegMode = pageSegMode;
+        this.variables = Collections.unmodifiableMap(new TreeMap<>(variables));
+        this.nativeApi = nativeApi;
+    }
+
+    /**
+     * @return
+     *  A copy of this spec with a different Tessdata directory.
+     */
+    public OcrEngineSpec withDatapath(String datapath) {
+        return new OcrEngineSpec(datapath, language, pageSegMode, variables, nativeApi);
+    }
+
+    /**
+     * @return
+     *  A copy of this spec with a different language.
+     */
+    public OcrEngineSpec withLanguage(String language) {
+        return new OcrEngineSpec(datapath, language, pageSegMode, variables, nativeApi);
+    }
+
+    public OcrEngine createEngine() throws OcrException {
+        return nativeApi
+                ? new NativeTessOcrEngine(datapath, language, pageSegMode, variables)
+                : new Tess4jOcrEngine(datapath, language, pageSegMode, variables);
+    }
+
+    public String getDatapath() {
+        return datapath;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public int getPageSegMode() {
+        return pageSegMode;
+    }
+
+    /**
+     * @return
+     *  The configuration variables, sorted by name.
+     */
+    public Map<String, String> getVariables() {
+        return variables;
+    }
+
+    public boolean isNativeApi() {
+        return nativeApi;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof OcrEngineSpec)) {
+            return false;
+        }
+        final OcrEngineSpec other = (OcrEngineSpec) o;
+        return pageSegMode == other.pageSegMode
+                && nativeApi == other.nativeApi
+                && Objects.equals(datapath, other.datapath)
+                && Objects.equals(language, other.language)
+                && variables.equals(other.variables);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(datapath, language, pageSegMode, variables, nativeApi);
+    }
+
+    @Override
+    public String toString() {
+        return "OcrEngineSpec[datapath=" + datapath + ", language=" + language + ", pageSegMode=" + pageSegMode
+                + ", variables=" + variables + ", nativeApi=" + nativeApi + "]";
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.ocr.engine;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything recognized in one image. The words and hOCR are only present when the layout was asked for, they are
+ * read from the same recognition as the text.
+ */
+public final class OcrResult {
+
+    private final String text;
+    private final int meanConfidence;
+    private final List<OcrWord> words;
+    private final String hocr;
+
+    /**
+     * @param text
+     *  The recognized text.
+     * @param meanConfidence
+     *  Tesseract's mean confidence in the text, from 0 to 100, or -1 if the engine does not report it.
+     * @param words
+     *  The recognized words, empty unless the layout was asked for.
+     * @param hocr
+     *  The hOCR page element, null unless the layout was asked for.
+     */
+    public OcrResult(String text, int meanConfidence, List<OcrWord> words, String hocr) {
+        this.text = text;
+        this.meanConfidence = meanConfidence;
+        this.words = Collections.unmodifiableList(words);
+        this.hocr = hocr;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public int getMeanConfidence() {
+        return meanConfidence;
+    }
+
+    public List<OcrWord> getWords() {
+        return words;
+    }
+
+    public String getHocr() {
+        return hocr;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.ocr.engine;
+
+/**
+ * A recognized word, its bounding box in pixels relative to the recognized image and where it sits in Tesseract's
+ * layout. Block, paragraph, line and word numbers start at 1 and restart within their enclosing element, as in
+ * Tesseract's TSV output.
+ */
+public final class OcrWord {
+
+    private final String text;
+    private final float confidence;
+    private final int left;
+    private final int top;
+    private final int width;
+    private final int height;
+    private final int block;
+    private final int paragraph;
+    private final int line;
+    private final int word;
+
+    public OcrWord(String text, float confidence, int left, int top, int width, int height,
+                   int block, int paragraph, int line, int word) {
+        this.text = text;
+        this.confidence = confidence;
+        this.left = left;
+        this.top = top;
+        this.width = width;
+        this.height = height;
+        this.block = block;
+        this.paragraph = paragraph;
+        this.line = line;
+        this.word = word;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return
+     *  Tesseract's confidence in the word, from 0 to 100.
+     */
+    public float getConfidence() {
+        return confidence;
+    }
+
+    public int getLeft() {
+        return left;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getBlock() {
+        return block;
+    }
+
+    public int getParagraph() {
+        return paragraph;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getWord() {
+        return word;
+    }
+}
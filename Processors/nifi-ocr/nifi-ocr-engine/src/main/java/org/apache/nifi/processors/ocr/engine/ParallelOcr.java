@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.ocr.engine;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a sequence of images, such as the pages of a multi-page TIFF, through engines borrowed from a pool in
+ * parallel and hands the results back in the original order. Images are pulled from the source only as workers
+ * become free, so no more than 'maxInFlight' decoded images are held at once no matter how long the sequence is.
+ */
+public class ParallelOcr {
+
+    /**
+     * Supplies the images, one at a time and in order.
+     */
+    public interface ImageSource {
+        /**
+         * @return
+         *  The next image, or null when there are no more.
+         */
+        BufferedImage next() throws IOException;
+    }
+
+    /**
+     * Receives the result of each image in the order the images were supplied.
+     */
+    public interface ResultHandler {
+        void accept(int index, OcrResult result) throws IOException;
+    }
+
+    private final ExecutorService executor;
+    private final OcrEnginePool pool;
+    private final int maxInFlight;
+    private final boolean layout;
+
+    /**
+     * @param executor
+     *  Runs the OCR, or null to run it in the calling thread one image at a time.
+     * @param pool
+     *  Engines the images are recognized with.
+     * @param maxInFlight
+     *  Maximum number of images being recognized or waiting to be written at once.
+     * @param layout
+     *  Recognize the layout along with the text, see {@link OcrEngine#recognize(BufferedImage, boolean)}.
+     */
+    public ParallelOcr(ExecutorService executor, OcrEnginePool pool, int maxInFlight, boolean layout) {
+        this.executor = executor;
+        this.pool = pool;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.layout = layout;
+    }
+
+    /**
+     * @return
+     *  The number of images recognized.
+     */
+    public int run(ImageSource source, ResultHandler handler) throws IOException, OcrException, InterruptedException {
+        final Deque<Future<OcrResult>> inFlight = new ArrayDeque<>();
+        int written = 0;
+        try {
+            BufferedImage image;
+            while ((image = source.next()) != null) {
+                if (executor == null) {
+                    handler.accept(written++, recognize(image));
+                    continue;
+                }
+                if (inFlight.size() >= maxInFlight) {
+                    handler.accept(written++, await(inFlight.poll()));
+                }
+                final BufferedImage submitted = image;
+                inFlight.add(executor.submit(new Callable<OcrResult>() {
+                    @Override
+                    public OcrResult call() throws Exception {
+                        return recognize(submitted);
+                    }
+                }));
+            }
+            while (!inFlight.isEmpty()) {
+                handler.accept(written++, await(inFlight.poll()));
+            }
+            return written;
+        } finally {
+            // Only non-empty if something failed, the remaining results are of no use
+            for (Future<OcrResult> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private OcrResult recognize(BufferedImage image) throws OcrException, InterruptedException {
+        final OcrEngine engine = pool.borrow();
+        try {
+            return engine.recognize(image, layout);
+        } finally {
+            pool.giveBack(engine);
+        }
+    }
+
+    private static OcrResult await(Future<OcrResult> future) throws OcrException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof OcrException) {
+                throw (OcrException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new OcrException(cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.ocr.engine;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs each image through an {@link ImagePreprocessor} before handing it to another engine. The preprocessor's
+ * scratch buffers belong to this engine, so they are reused for every image the engine recognizes. Word positions
+ * are scaled back to the original image when it was downscaled.
+ */
+public class PreprocessingOcrEngine implements OcrEngine {
+
+    private final OcrEngine engine;
+    private final ImagePreprocessor preprocessor;
+
+    public PreprocessingOcrEngine(OcrEngine engine, ImagePreprocessor preprocessor) {
+        this.engine = engine;
+        this.preprocessor = preprocessor;
+    }
+
+    @Override
+    public OcrResult recognize(BufferedImage image, boolean layout) throws OcrException {
+        final OcrResult result = engine.recognize(preprocessor.process(image), layout);
+        if (!layout || preprocessor.getScale() == 1.0) {
+            return result;
+        }
+
+        final double scale = 1.0 / preprocessor.getScale();
+        final List<OcrWord> words = new ArrayList<>(result.getWords().size());
+        for (OcrWord word : result.getWords()) {
+            words.add(new OcrWord(word.getText(), word.getConfidence(),
+                    (int) Math.round(word.getLeft() * scale), (int) Math.round(word.getTop() * scale),
+                    (int) Math.round(word.getWidth() * scale), (int) Math.round(word.getHeight() * scale),
+                    word.getBlock(), word.getParagraph(), word.getLine(), word.getWord()));
+        }
+        return new OcrResult(result.getText(), result.getMeanConfidence(), words, Hocr.transformBoxes(result.getHocr(), scale, 0, 0));
+    }
+
+    @Override
+    public void close() {
+        engine.close();
+    }
+}
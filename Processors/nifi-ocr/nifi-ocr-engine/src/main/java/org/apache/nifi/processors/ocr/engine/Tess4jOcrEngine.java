@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.ocr.engine;
+
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.Map;
+
+import net.sourceforge.tess4j.Tesseract;
+import net.sourceforge.tess4j.TesseractException;
+
+/**
+ * Runs OCR through Tess4J's {@link Tesseract}, configured once when the engine is created.
+ */
+public class Tess4jOcrEngine implements OcrEngine {
+
+    private final Tesseract tesseract;
+
+    /**
+     * @param datapath
+     *  Tessdata directory holding the language's traineddata file.
+     * @param language
+     *  Tesseract language, e.g. 'eng'.
+     * @param pageSegMode
+     *  Tesseract page segmentation mode.
+     * @param variables
+     *  Tesseract configuration variables.
+     */
+    public Tess4jOcrEngine(String datapath, String language, int pageSegMode, Map<String, String> variables) {
+        this.tesseract = new Tesseract();
+        tesseract.setDatapath(datapath);
+        tesseract.setLanguage(language);
+        tesseract.setPageSegMode(pageSegMode);
+        for (Map.Entry<String, String> entry : variables.entrySet()) {
+            tesseract.setTessVariable(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public OcrResult recognize(BufferedImage image, boolean layout) throws OcrException {
+        if (layout) {
+            // doOCR only returns the text, the layout would take a second recognition of the image
+            throw new OcrException("Tess4J engines only recognize plain text, the layout requires the native API");
+        }
+        try {
+            return new OcrResult(tesseract.doOCR(image), -1, Collections.<OcrWord>emptyList(), null);
+        } catch (TesseractException e) {
+            throw new OcrException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        // Tesseract initializes and ends the native API within each doOCR call, so nothing is held between calls
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.ocr.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+public class ImagePreprocessorTest {
+
+    private static BufferedImage image(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        return image;
+    }
+
+    @Test
+    public void testOtsuBinarizesToOneBit() {
+        BufferedImage image = image(100, 10);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(40, 40, 40));
+        g.fillRect(0, 0, 50, 10);
+        g.setColor(new Color(200, 200, 200));
+        g.fillRect(50, 0, 50, 10);
+        g.dispose();
+
+        BufferedImage binary = new ImagePreprocessor(ImagePreprocessor.Binarization.OTSU, false, 1.0).process(image);
+        assertEquals(BufferedImage.TYPE_BYTE_BINARY, binary.getType());
+        assertEquals(0x000000, binary.getRGB(10, 5) & 0xffffff);
+        assertEquals(0xffffff, binary.getRGB(90, 5) & 0xffffff);
+    }
+
+    @Test
+    public void testDownscaleAveragesPixels() {
+        BufferedImage image = image(4, 2);
+        image.setRGB(0, 0, 0);
+        image.setRGB(1, 1, 0);
+
+        BufferedImage gray = new ImagePreprocessor(ImagePreprocessor.Binarization.NONE, false, 0.5).process(image);
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, gray.getType());
+        assertEquals(2, gray.getWidth());
+        assertEquals(1, gray.getHeight());
+        assertEquals(127, gray.getRaster().getSample(0, 0, 0));
+        assertEquals(255, gray.getRaster().getSample(1, 0, 0));
+    }
+
+    @Test
+    public void testDeskewStraightensLines() {
+        BufferedImage image = image(600, 400);
+        Graphics2D g = image.createGraphics();
+        g.rotate(Math.toRadians(3), 300, 200);
+        g.setColor(Color.BLACK);
+        for (int y = 100; y < 300; y += 40) {
+            g.fillRect(50, y, 500, 8);
+        }
+        g.dispose();
+
+        BufferedImage straight = new ImagePreprocessor(ImagePreprocessor.Binarization.OTSU, true, 1.0).process(image);
+        // The top edge of the middle bar is at the same height across the image
+        int left = topEdge(straight, 150);
+        int right = topEdge(straight, 450);
+        assertTrue("left " + left + " right " + right, Math.abs(left - right) <= 2);
+    }
+
+    private static int topEdge(BufferedImage image, int x) {
+        for (int y = 170; y < image.getHeight(); y++) {
+            if ((image.getRGB(x, y) & 0xffffff) == 0) {
+                return y;
+            }
+        }
+        return -1;
+    }
+}
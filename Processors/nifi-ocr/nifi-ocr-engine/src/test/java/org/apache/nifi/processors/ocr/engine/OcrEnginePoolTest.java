@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.ocr.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class OcrEnginePoolTest {
+
+    private static class CountingEngine implements OcrEngine {
+        private boolean closed;
+
+        @Override
+        public OcrResult recognize(BufferedImage image, boolean layout) {
+            return new OcrResult("text", 90, Collections.<OcrWord>emptyList(), null);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    public void testReusesEnginesUpToMaxSize() throws Exception {
+        final AtomicInteger created = new AtomicInteger();
+        OcrEnginePool pool = new OcrEnginePool(new OcrEnginePool.Factory() {
+            @Override
+            public OcrEngine create() {
+                created.incrementAndGet();
+                return new CountingEngine();
+            }
+        }, 2);
+
+        OcrEngine first = pool.borrow();
+        OcrEngine second = pool.borrow();
+        assertEquals(2, created.get());
+
+        pool.giveBack(first);
+        assertSame(first, pool.borrow());
+        assertEquals(2, created.get());
+        pool.giveBack(second);
+        pool.close();
+    }
+
+    @Test
+    public void testPrestartCreatesEnginesUpFront() throws Exception {
+        final AtomicInteger created = new AtomicInteger();
+        OcrEnginePool pool = new OcrEnginePool(new OcrEnginePool.Factory() {
+            @Override
+            public OcrEngine create() {
+                created.incrementAndGet();
+                return new CountingEngine();
+            }
+        }, 2);
+
+        pool.prestart(5);
+        assertEquals(2, created.get());
+
+        pool.borrow();
+        pool.borrow();
+        pool.prestart(2);
+        assertEquals(2, created.get());
+        pool.close();
+    }
+
+    @Test
+    public void testCloseClosesIdleAndReturnedEngines() throws Exception {
+        OcrEnginePool pool = new OcrEnginePool(new OcrEnginePool.Factory() {
+            @Override
+            public OcrEngine create() {
+                return new CountingEngine();
+            }
+        }, 2);
+
+        CountingEngine idle = (CountingEngine) pool.borrow();
+        CountingEngine borrowed = (CountingEngine) pool.borrow();
+        pool.giveBack(idle);
+
+        pool.close();
+        assertTrue(idle.closed);
+
+        pool.giveBack(borrowed);
+        assertTrue(borrowed.closed);
+    }
+
+    @Test
+    public void testSharedLimitClosesIdleEnginesOfOtherPools() throws Exception {
+        OcrEnginePool.Factory factory = new OcrEnginePool.Factory() {
+            @Override
+            public OcrEngine create() {
+                return new CountingEngine();
+            }
+        };
+        OcrEnginePool.Limit limit = new OcrEnginePool.Limit(2);
+        OcrEnginePool eng = new OcrEnginePool(factory, 2, limit);
+        OcrEnginePool deu = new OcrEnginePool(factory, 2, limit);
+
+        eng.prestart(2);
+        deu.prestart(2);
+        assertEquals(2, limit.getCreated());
+
+        CountingEngine first = (CountingEngine) eng.borrow();
+        CountingEngine second = (CountingEngine) eng.borrow();
+        eng.giveBack(second);
+
+        // Makes room by closing the idle engine of the other pool, never the borrowed one
+        OcrEngine german = deu.borrow();
+        assertTrue(second.closed);
+        assertFalse(first.closed);
+        assertEquals(2, limit.getCreated());
+
+        deu.giveBack(german);
+        eng.giveBack(first);
+        eng.close();
+        deu.close();
+        assertEquals(0, limit.getCreated());
+    }
+}
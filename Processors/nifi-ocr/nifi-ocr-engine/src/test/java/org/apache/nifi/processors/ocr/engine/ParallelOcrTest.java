@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.ocr.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class ParallelOcrTest {
+
+    /**
+     * Recognizes an image as its width, taking longer for some images so results complete out of order.
+     */
+    private static class WidthEngine implements OcrEngine {
+        private final Random random = new Random();
+
+        @Override
+        public OcrResult recognize(BufferedImage image, boolean layout) throws OcrException {
+            try {
+                Thread.sleep(random.nextInt(5));
+            } catch (InterruptedException e) {
+                throw new OcrException("Interrupted", e);
+            }
+            return new OcrResult(String.valueOf(image.getWidth()), 90, Collections.<OcrWord>emptyList(), null);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static ParallelOcr.ImageSource pages(final int count) {
+        return new ParallelOcr.ImageSource() {
+            private int page = 0;
+
+            @Override
+            public BufferedImage next() {
+                return page < count ? new BufferedImage(++page, 1, BufferedImage.TYPE_BYTE_GRAY) : null;
+            }
+        };
+    }
+
+    @Test
+    public void testResultsAreHandledInPageOrder() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final OcrEnginePool pool = new OcrEnginePool(new OcrEnginePool.Factory() {
+            @Override
+            public OcrEngine create() {
+                return new WidthEngine();
+            }
+        }, 4);
+
+        final List<String> texts = new ArrayList<>();
+        try {
+            int count = new ParallelOcr(executor, pool, 5, false).run(pages(50), new ParallelOcr.ResultHandler() {
+                @Override
+                public void accept(int index, OcrResult result) {
+                    assertEquals(texts.size(), index);
+                    texts.add(result.getText());
+                }
+            });
+
+            assertEquals(50, count);
+            for (int i = 0; i < texts.size(); i++) {
+                assertEquals(String.valueOf(i + 1), texts.get(i));
+            }
+        } finally {
+            executor.shutdownNow();
+            pool.close();
+        }
+    }
+
+    @Test(expected = OcrException.class)
+    public void testEngineFailureIsRethrown() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final OcrEnginePool pool = new OcrEnginePool(new OcrEnginePool.Factory() {
+            @Override
+            public OcrEngine create() throws OcrException {
+                throw new OcrException("No traineddata");
+            }
+        }, 2);
+
+        try {
+            new ParallelOcr(executor, pool, 3, false).run(pages(10), new ParallelOcr.ResultHandler() {
+                @Override
+                public void accept(int index, OcrResult result) {
+                }
+            });
+        } finally {
+            executor.shutdownNow();
+            pool.close();
+        }
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.ocr;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.apache.nifi.processors.ocr.engine.Hocr;
+import org.apache.nifi.processors.ocr.engine.OcrResult;
+import org.apache.nifi.processors.ocr.engine.OcrWord;
+
+/**
+ * Writes the results of the tiles of an image, in page and tile order, as one of the processor's output formats.
+ * Word positions are written relative to the page.
+ */
+abstract class OcrOutput {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    protected final OutputStream out;
+
+    protected OcrOutput(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * @param format
+     *  One of the processor's 'Output Format' values.
+     */
+    static OcrOutput create(String format, OutputStream out) throws IOException {
+        if (TesseractOCRProcessor.OUTPUT_HOCR.equals(format)) {
+            return new HocrOutput(out);
+        } else if (TesseractOCRProcessor.OUTPUT_TSV.equals(format)) {
+            return new TsvOutput(out);
+        } else if (TesseractOCRProcessor.OUTPUT_JSON.equals(format)) {
+            return new JsonOutput(out);
+        }
+        return new TextOutput(out);
+    }
+
+    /**
+     * @param tiled
+     *  Whether pages are split into overlapping tiles, whose text is merged from the positions of its lines.
+     *
+     * @return
+     *  Whether the format needs the words and hOCR of each tile rather than just its text.
+     */
+    static boolean needsLayout(String format, boolean tiled) {
+        return tiled || !TesseractOCRProcessor.OUTPUT_TEXT.equals(format);
+    }
+
+    abstract String getMimeType();
+
+    void begin() throws IOException {
+    }
+
+    abstract void write(Tile tile, OcrResult result) throws IOException;
+
+    void end() throws IOException {
+    }
+
+    protected void write(String s) throws IOException {
+        out.write(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The text of each page, with pages separated by form feeds. The text of a tile that overlaps others is rebuilt from
+     * its lines, keeping only those whose center the tile owns, so a line cut at the edge of one tile is taken from the
+     * tile that holds it whole. Lines of a tile follow on from those of the tile above, paragraphs within a tile are
+     * separated by a blank line as in Tesseract's own text.
+     */
+    private static class TextOutput extends OcrOutput {
+        private int page = -1;
+
+        TextOutput(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        String getMimeType() {
+            return "text/plain";
+        }
+
+        @Override
+        void write(Tile tile, OcrResult result) throws IOException {
+            if (tile.getPage() != page) {
+                if (page >= 0) {
+                    out.write('\f');
+                }
+                page = tile.getPage();
+            }
+            if (tile.isWhole()) {
+                write(result.getText());
+                return;
+            }
+
+            final List<OcrWord> words = result.getWords();
+            final StringBuilder text = new StringBuilder();
+            OcrWord previousLine = null;
+            for (int start = 0, end; start < words.size(); start = end) {
+                //The words of a line are consecutive
+                final OcrWord first = words.get(start);
+                int top = first.getTop();
+                int bottom = first.getTop() + first.getHeight();
+                for (end = start + 1; end < words.size() && sameLine(first, words.get(end)); end++) {
+                    top = Math.min(top, words.get(end).getTop());
+                    bottom = Math.max(bottom, words.get(end).getTop() + words.get(end).getHeight());
+                }
+                if (!tile.keeps(top, bottom - top)) {
+                    continue;
+                }
+
+                if (previousLine != null && (previousLine.getBlock() != first.getBlock() || previousLine.getParagraph() != first.getParagraph())) {
+                    text.append('\n');
+                }
+                for (int i = start; i < end; i++) {
+                    text.append(words.get(i).getText()).append(i < end - 1 ? ' ' : '\n');
+                }
+                previousLine = first;
+            }
+            write(text.toString());
+        }
+
+        private static boolean sameLine(OcrWord a, OcrWord b) {
+            return a.getBlock() == b.getBlock() && a.getParagraph() == b.getParagraph() && a.getLine() == b.getLine();
+        }
+    }
+
+    /**
+     * A row per word, with the columns of Tesseract's own TSV output. Blocks are numbered across the tiles of a page.
+     */
+    private static class TsvOutput extends OcrOutput {
+        private int page = -1;
+        private int blockBase;
+
+        TsvOutput(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        String getMimeType() {
+            return "text/tab-separated-values";
+        }
+
+        @Override
+        void begin() throws IOException {
+            write("level\tpage_num\tblock_num\tpar_num\tline_num\tword_num\tleft\ttop\twidth\theight\tconf\ttext\n");
+        }
+
+        @Override
+        void write(Tile tile, OcrResult result) throws IOException {
+            if (tile.getPage() != page) {
+                page = tile.getPage();
+                blockBase = 0;
+            }
+            int blocks = 0;
+            final StringBuilder rows = new StringBuilder();
+            for (OcrWord word : result.getWords()) {
+                blocks = Math.max(blocks, word.getBlock());
+                if (!tile.keeps(word)) {
+                    continue;
+                }
+                rows.append("5\t").append(page + 1)
+                        .append('\t').append(blockBase + word.getBlock())
+                        .append('\t').append(word.getParagraph())
+                        .append('\t').append(word.getLine())
+                        .append('\t').append(word.getWord())
+                        .append('\t').append(tile.getRegion().x + word.getLeft())
+                        .append('\t').append(tile.getRegion().y + word.getTop())
+                        .append('\t').append(word.getWidth())
+                        .append('\t').append(word.getHeight())
+                        .append('\t').append(word.getConfidence())
+                        .append('\t').append(word.getText().replace('\t', ' '))
+                        .append('\n');
+            }
+            blockBase += blocks;
+            write(rows.toString());
+        }
+    }
+
+    /**
+     * An array with a record per word.
+     */
+    private static class JsonOutput extends OcrOutput {
+        private final JsonGenerator generator;
+
+        JsonOutput(OutputStream out) throws IOException {
+            super(out);
+            this.generator = OBJECT_MAPPER.getFactory().createGenerator(out);
+            // The FlowFile's stream is closed by the session
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        }
+
+        @Override
+        String getMimeType() {
+            return "application/json";
+        }
+
+        @Override
+        void begin() throws IOException {
+            generator.writeStartArray();
+        }
+
+        @Override
+        void write(Tile tile, OcrResult result) throws IOException {
+            for (OcrWord word : result.getWords()) {
+                if (!tile.keeps(word)) {
+                    continue;
+                }
+                generator.writeStartObject();
+                generator.writeNumberField("page", tile.getPage() + 1);
+                generator.writeStringField("text", word.getText());
+                generator.writeNumberField("confidence", word.getConfidence());
+                generator.writeNumberField("left", tile.getRegion().x + word.getLeft());
+                generator.writeNumberField("top", tile.getRegion().y + word.getTop());
+                generator.writeNumberField("width", word.getWidth());
+                generator.writeNumberField("height", word.getHeight());
+                generator.writeNumberField("block", word.getBlock());
+                generator.writeNumberField("paragraph", word.getParagraph());
+                generator.writeNumberField("line", word.getLine());
+                generator.writeNumberField("word", word.getWord());
+                generator.writeEndObject();
+            }
+        }
+
+        @Override
+        void end() throws IOException {
+            generator.writeEndArray();
+            generator.close();
+        }
+    }
+
+    /**
+     * An hOCR document with the page element Tesseract produced for each tile, moved to the tile's position on the page.
+     * Lines are only kept from the tile that holds their center, and the ids of each tile's elements are numbered
+     * after the tile so they are unique within the document.
+     */
+    private static class HocrOutput extends OcrOutput {
+        private static final Pattern PAGE_NUMBER = Pattern.compile("ppageno \\d+");
+        private int tiles;
+
+        HocrOutput(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        String getMimeType() {
+            return "text/html";
+        }
+
+        @Override
+        void begin() throws IOException {
+            write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Transitional//EN\""
+                    + " \"http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd\">\n"
+                    + "<html xmlns=\"http://www.w3.org/1999/xhtml\" xml:lang=\"en\" lang=\"en\">\n"
+                    + " <head>\n"
+                    + "  <title></title>\n"
+                    + "  <meta http-equiv=\"Content-Type\" content=\"text/html;charset=utf-8\" />\n"
+                    + "  <meta name='ocr-system' content='tesseract' />\n"
+                    + "  <meta name='ocr-capabilities' content='ocr_page ocr_carea ocr_par ocr_line ocrx_word'/>\n"
+                    + " </head>\n"
+                    + " <body>\n");
+        }
+
+        @Override
+        void write(final Tile tile, OcrResult result) throws IOException {
+            String hocr = result.getHocr();
+            if (!tile.isWhole()) {
+                hocr = Hocr.retainLines(hocr, new Hocr.BoxFilter() {
+                    @Override
+                    public boolean keeps(int left, int top, int right, int bottom) {
+                        return tile.keeps(top, bottom - top);
+                    }
+                });
+            }
+            final String moved = Hocr.transformBoxes(Hocr.renumberIds(hocr, ++tiles), 1.0, tile.getRegion().x, tile.getRegion().y);
+            write(PAGE_NUMBER.matcher(moved).replaceAll("ppageno " + tile.getPage()));
+        }
+
+        @Override
+        void end() throws IOException {
+            write(" </body>\n</html>\n");
+        }
+    }
+}
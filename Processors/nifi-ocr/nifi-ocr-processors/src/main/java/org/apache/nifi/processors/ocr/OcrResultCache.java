@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.ocr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.apache.nifi.distributed.cache.client.Deserializer;
+import org.apache.nifi.distributed.cache.client.DistributedMapCacheClient;
+import org.apache.nifi.distributed.cache.client.Serializer;
+import org.apache.nifi.logging.ComponentLog;
+
+/**
+ * Caches the output and attributes of OCR so that byte identical images, such as retried or resubmitted documents,
+ * are not OCR'd again. Entries are kept in a bounded, least recently used, in-memory map and optionally in a
+ * DistributedMapCacheClient that is consulted when the in-memory map misses.
+ * <p>
+ * Failures talking to the distributed cache are logged and treated as a miss; they never fail a FlowFile. Output
+ * larger than the maximum entry size is never cached, which bounds the memory held by the in-memory map.
+ */
+public class OcrResultCache {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final Serializer<String> KEY_SERIALIZER = new Serializer<String>() {
+        @Override
+        public void serialize(String value, OutputStream out) throws IOException {
+            out.write(value.getBytes(StandardCharsets.UTF_8));
+        }
+    };
+
+    private static final Serializer<Entry> VALUE_SERIALIZER = new Serializer<Entry>() {
+        @Override
+        public void serialize(Entry value, OutputStream out) throws IOException {
+            out.write(OBJECT_MAPPER.writeValueAsBytes(value));
+        }
+    };
+
+    private static final Deserializer<Entry> VALUE_DESERIALIZER = new Deserializer<Entry>() {
+        @Override
+        public Entry deserialize(byte[] input) throws IOException {
+            if (input == null || input.length == 0) {
+                return null;
+            }
+            return OBJECT_MAPPER.readValue(input, Entry.class);
+        }
+    };
+
+    /**
+     * The OCR output written to the FlowFile's content and the attributes added to it.
+     */
+    public static final class Entry {
+        private String content;
+        private Map<String, String> attributes;
+
+        public Entry() {
+        }
+
+        public Entry(String content, Map<String, String> attributes) {
+            this.content = content;
+            this.attributes = Collections.unmodifiableMap(attributes);
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        public void setContent(String content) {
+            this.content = content;
+        }
+
+        public Map<String, String> getAttributes() {
+            return attributes;
+        }
+
+        public void setAttributes(Map<String, String> attributes) {
+            this.attributes = attributes;
+        }
+    }
+
+    /**
+     * Passes output through to the FlowFile's stream while keeping a copy of it for the cache. The copy is dropped as
+     * soon as the output grows past the maximum entry size.
+     */
+    public static final class Capture extends FilterOutputStream {
+        private final int maxBytes;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        Capture(OutputStream out, int maxBytes) {
+            super(out);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (keep(1)) {
+                copy.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (keep(len)) {
+                copy.write(b, off, len);
+            }
+        }
+
+        private boolean keep(int len) {
+            if (copy != null && copy.size() + len > maxBytes) {
+                copy = null;
+            }
+            return copy != null;
+        }
+
+        /**
+         * @return
+         *  The output written so far, or null if it was too large to cache.
+         */
+        public String getContent() {
+            return copy == null ? null : new String(copy.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private final Map<String, Entry> local;
+    private final DistributedMapCacheClient distributed;
+    private final ComponentLog logger;
+    private final int maxEntryBytes;
+
+    /**
+     * @param maxEntries
+     *  Maximum number of entries held in memory. 0 disables the in-memory tier.
+     * @param maxEntryBytes
+     *  Maximum size of the output of a single entry. Larger output is not cached.
+     * @param distributed
+     *  Optional distributed cache, may be null.
+     */
+    public OcrResultCache(final int maxEntries, int maxEntryBytes, DistributedMapCacheClient distributed, ComponentLog logger) {
+        this.local = maxEntries <= 0 ? null : Collections.synchronizedMap(new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        });
+        this.distributed = distributed;
+        this.logger = logger;
+        this.maxEntryBytes = maxEntryBytes;
+    }
+
+    /**
+     * @param out
+     *  The FlowFile's stream, which receives all of the output.
+     * @return
+     *  A stream that also keeps the output for {@link #put(String, Entry)} as long as it fits in an entry.
+     */
+    public Capture capture(OutputStream out) {
+        return new Capture(out, maxEntryBytes);
+    }
+
+    /**
+     * @return
+     *  A digest to hash the image content with, see {@link #key(byte[], String)}.
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Builds the cache key for an image.
+     *
+     * @param hash
+     *  SHA-256 hash of the image content.
+     * @param settings
+     *  Every setting that changes the OCR output, e.g. the language, page segmentation mode and Tesseract configuration values.
+     */
+    public static String key(byte[] hash, String settings) {
+        final StringBuilder sb = new StringBuilder(hash.length * 2 + settings.length() + 1);
+        for (byte b : hash) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.append(':').append(settings).toString();
+    }
+
+    /**
+     * @return
+     *  The cached output or null on a miss.
+     */
+    public Entry get(String key) {
+        if (local != null) {
+            final Entry entry = local.get(key);
+            if (entry != null) {
+                return entry;
+            }
+        }
+
+        if (distributed != null) {
+            try {
+                final Entry entry = distributed.get(key, KEY_SERIALIZER, VALUE_DESERIALIZER);
+                if (entry != null && local != null) {
+                    local.put(key, entry);
+                }
+                return entry;
+            } catch (IOException e) {
+                logger.warn("Unable to read OCR output from the distributed cache", e);
+            }
+        }
+        return null;
+    }
+
+    public void put(String key, Entry entry) {
+        if (local != null) {
+            local.put(key, entry);
+        }
+
+        if (distributed != null) {
+            try {
+                distributed.put(key, entry, KEY_SERIALIZER, VALUE_SERIALIZER);
+            } catch (IOException e) {
+                logger.warn("Unable to write OCR output to the distributed cache", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.ocr;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The Tesseract languages installed in a Tessdata directory, found by listing the files ending with '.traineddata'.
+ * The listing is cached until the directory's modification time changes, which it does whenever a file is added,
+ * removed or renamed, so repeated validation only costs a single stat of the directory. Indexes are shared by every
+ * processor instance using the same directory and are safe to use from any thread.
+ */
+public final class TessdataLanguageIndex {
+
+    static final String TESS_LANG_EXTENSION = ".traineddata";
+
+    // File systems may only keep modification times to the second, a listing taken within this long of the last
+    // modification could miss a file added in the same second, so it is not trusted for later lookups.
+    private static final long MODIFICATION_GRANULARITY_MILLIS = 2000L;
+
+    private static final ConcurrentMap<String, TessdataLanguageIndex> INDEXES = new ConcurrentHashMap<>();
+
+    private final File directory;
+    private volatile Listing listing;
+
+    private static final class Listing {
+        private final long modified;
+        private final boolean trusted;
+        private final Set<String> languages;
+
+        Listing(long modified, boolean trusted, Set<String> languages) {
+            this.modified = modified;
+            this.trusted = trusted;
+            this.languages = languages;
+        }
+    }
+
+    private TessdataLanguageIndex(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return
+     *  The languages installed in the directory, sorted by name. Empty if the directory does not exist.
+     */
+    public static Set<String> getLanguages(String tessDataPath) {
+        final File directory = new File(tessDataPath);
+        if (!directory.isDirectory()) {
+            //Not indexed, so paths that are mistyped, or typed a character at a time, are not kept
+            return Collections.emptySet();
+        }
+
+        TessdataLanguageIndex index = INDEXES.get(directory.getAbsolutePath());
+        if (index == null) {
+            final TessdataLanguageIndex created = new TessdataLanguageIndex(directory);
+            index = INDEXES.putIfAbsent(directory.getAbsolutePath(), created);
+            if (index == null) {
+                index = created;
+            }
+        }
+        return index.getLanguages();
+    }
+
+    private Set<String> getLanguages() {
+        final long modified = directory.lastModified();
+        final Listing current = listing;
+        if (current != null && current.trusted && current.modified == modified) {
+            return current.languages;
+        }
+
+        final Set<String> languages = new TreeSet<>();
+        final File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File pathname) {
+                return pathname.getName().endsWith(TESS_LANG_EXTENSION);
+            }
+        });
+        if (files != null) {
+            for (File file : files) {
+                final String name = file.getName();
+                languages.add(name.substring(0, name.length() - TESS_LANG_EXTENSION.length()));
+            }
+        }
+
+        //Concurrent rescans are harmless, whichever listing is stored last is as fresh as the other
+        listing = new Listing(modified, System.currentTimeMillis() - modified >= MODIFICATION_GRANULARITY_MILLIS,
+                Collections.unmodifiableSet(languages));
+        return listing.languages;
+    }
+}
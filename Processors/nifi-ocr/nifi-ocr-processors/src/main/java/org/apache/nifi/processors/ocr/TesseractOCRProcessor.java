@@ -17,44 +17,72 @@
 
 package org.apache.nifi.processors.ocr;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.FileFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.nifi.annotation.behavior.InputRequirement;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.Tags;
 import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.annotation.lifecycle.OnStopped;
 import org.apache.nifi.components.PropertyDescriptor;
 import org.apache.nifi.components.ValidationContext;
 import org.apache.nifi.components.ValidationResult;
 import org.apache.nifi.components.Validator;
+import org.apache.nifi.distributed.cache.client.DistributedMapCacheClient;
 import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.flowfile.attributes.CoreAttributes;
 import org.apache.nifi.processor.AbstractProcessor;
+import org.apache.nifi.processor.DataUnit;
 import org.apache.nifi.processor.ProcessContext;
 import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.processor.Relationship;
 import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.io.InputStreamCallback;
+import org.apache.nifi.processor.io.OutputStreamCallback;
 import org.apache.nifi.processor.io.StreamCallback;
 import org.apache.nifi.processor.util.StandardValidators;
-
-import net.sourceforge.tess4j.ITesseract;
-import net.sourceforge.tess4j.Tesseract;
-import net.sourceforge.tess4j.TesseractException;
+import org.apache.nifi.processors.ocr.engine.ImagePreprocessor;
+import org.apache.nifi.processors.ocr.engine.OcrEngine;
+import org.apache.nifi.processors.ocr.engine.OcrEnginePool;
+import org.apache.nifi.processors.ocr.engine.OcrEngineSpec;
+import org.apache.nifi.processors.ocr.engine.OcrException;
+import org.apache.nifi.processors.ocr.engine.OcrResult;
+import org.apache.nifi.processors.ocr.engine.ParallelOcr;
+import org.apache.nifi.processors.ocr.engine.PreprocessingOcrEngine;
 
 @Tags({"ocr", "tesseract", "image", "text"})
 @InputRequirement(InputRequirement.Requirement.INPUT_REQUIRED)
@@ -73,18 +101,33 @@ import net.sourceforge.tess4j.TesseractException;
         " TesseractOCRProcessor only supports installations of Tesseract version 3.0 and greater.")
 public class TesseractOCRProcessor extends AbstractProcessor {
 
-    public static Set<String> SUPPORTED_LANGUAGES;
-    private static final String TESS_LANG_EXTENSION = ".traineddata";
+    //Since this is the default value we need to ensure it is present in the allowableValues.
+    private static final Set<String> DEFAULT_LANGUAGES = Collections.singleton("eng");
     //private static List<AllowableValue> PAGE_SEGMENTATION_MODES;        //NOTE: changed from List<AllowableValue> to Set<Strin> to work with NiFi 0.6.1
     private static Set<String> PAGE_SEGMENTATION_MODES;
-    private volatile ITesseract tesseract;
+    private static final int BATCH_SIZE = 10;
+    private final ConcurrentMap<OcrEngineSpec, OcrEnginePool> enginePools = new ConcurrentHashMap<>();
+    private volatile OcrEngineSpec engineSpec;          // Resolved at schedule time, without the Tessdata directory if it is evaluated per FlowFile.
+    private volatile boolean dataPathPerFlowFile;
+    private volatile String languageAttribute;          // Null when every FlowFile uses the configured language.
+    private volatile int enginePoolSize;
+    private volatile OcrEnginePool.Limit engineLimit;   // Shared by the pools of every language.
+    private volatile boolean allPages;
+    private volatile ExecutorService pageExecutor;     // OCRs the pages and tiles of an image in parallel.
+    private volatile int tileHeight;                   // 0 when images are not tiled.
+    private volatile int tileOverlap;
+    private volatile String outputFormat;
+    private volatile boolean preprocess;
+    private volatile ImagePreprocessor.Binarization binarization;
+    private volatile boolean deskew;
+    private volatile double scale;
+    private volatile OcrResultCache resultCache;        // Output of previously seen images, null when caching is disabled.
+    private volatile String cacheSettings;              // Schedule wide settings that change the output, part of every cache key.
+    private volatile List<PropertyDescriptor> supportedDescriptors = buildSupportedDescriptors(DEFAULT_LANGUAGES);
     private static final  List<PropertyDescriptor> descriptors;
     private static final Set<Relationship> relationships;
 
     static {
-        SUPPORTED_LANGUAGES = new HashSet<>();
-        SUPPORTED_LANGUAGES.add("eng"); //Since this is the default value we need to ensure it is present in the allowableValues.
-
         //NOTE: this works with the latest version of NiFi but changed to work with older NiFi 0.6.1
 //        PAGE_SEGMENTATION_MODES = new ArrayList<AllowableValue>();
 //        PAGE_SEGMENTATION_MODES.add(new AllowableValue("0","0 = Orientation and script detection (OSD) only"));
@@ -125,7 +168,7 @@ public class TesseractOCRProcessor extends AbstractProcessor {
 
     /**
      * Validates the TessData directory by ensuring that the specified directory exists and also that at least
-     * once language is present. A language file ends with TESS_LANG_EXTENSION
+     * once language is present. A language file ends with '.traineddata'
      */
     public static class TessdataDirectoryValidator implements Validator {
 
@@ -139,9 +182,8 @@ public class TesseractOCRProcessor extends AbstractProcessor {
             String reason = null;
             try {
                 //There must be lanauges present to ensure the Tessdata directory is valid.
-                File[] languages = getTesseractLanguages(value);
-                if (languages == null || languages.length == 0) {
-                    reason =  "No valid languages found in directory. Languages end with '" + TESS_LANG_EXTENSION + "'";
+                if (TessdataLanguageIndex.getLanguages(value).isEmpty()) {
+                    reason =  "No valid languages found in directory. Languages end with '" + TessdataLanguageIndex.TESS_LANG_EXTENSION + "'";
                 }
             } catch (final Exception e) {
                 reason = "Value is not a valid directory name";
@@ -157,7 +199,7 @@ public class TesseractOCRProcessor extends AbstractProcessor {
             .required(true)
             //.defaultValue(SUPPORTED_LANGUAGES.iterator().next())
             .defaultValue("eng")
-            .allowableValues(SUPPORTED_LANGUAGES)
+            .allowableValues(DEFAULT_LANGUAGES)
             .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
             .build();
 
@@ -180,6 +222,217 @@ public class TesseractOCRProcessor extends AbstractProcessor {
             .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
             .build();
 
+    public static final PropertyDescriptor LANGUAGE_ATTRIBUTE = new PropertyDescriptor
+            .Builder().name("Language Attribute")
+            .description("Name of a FlowFile attribute holding the language to OCR the FlowFile in, such as 'deu' or 'eng+deu', so"
+                    + " one processor can serve documents in many languages. FlowFiles without the attribute use the 'Tesseract"
+                    + " Language'. Each language gets its own pool of engines, which together hold at most 'Max Engines'. The first"
+                    + " of combined languages is the primary one, so 'eng+deu' and 'deu+eng' get separate pools. FlowFiles asking for a"
+                    + " language that is not installed in the Tessdata directory are routed to failure.")
+            .required(false)
+            .addValidator(StandardValidators.ATTRIBUTE_KEY_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor PRELOADED_LANGUAGES = new PropertyDescriptor
+            .Builder().name("Preloaded Languages")
+            .description("Comma separated list of languages whose engines, as many as the 'Engine Pool Size', are initialized when the"
+                    + " processor is started instead of when the first FlowFile in that language arrives. Loading a language's"
+                    + " traineddata can take seconds. Requires a Tessdata directory that does not depend on FlowFile attributes.")
+            .required(false)
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .build();
+
+    public static final String ENGINE_NATIVE = "Persistent native API";
+    public static final String ENGINE_TESS4J = "Tess4J per call";
+
+    public static final PropertyDescriptor ENGINE_MODE = new PropertyDescriptor
+            .Builder().name("Engine Mode")
+            .description("How each pooled engine drives Tesseract. '" + ENGINE_NATIVE + "' initializes a native TessBaseAPI, loading the"
+                    + " language's traineddata, once per engine and only sets the image and reads the text for each FlowFile. '"
+                    + ENGINE_TESS4J + "' uses Tess4J's Tesseract, which initializes and ends the native API for every image.")
+            .required(true)
+            .defaultValue(ENGINE_NATIVE)
+            .allowableValues(ENGINE_NATIVE, ENGINE_TESS4J)
+            .build();
+
+    public static final PropertyDescriptor ENGINE_POOL_SIZE = new PropertyDescriptor
+            .Builder().name("Engine Pool Size")
+            .description("Maximum number of Tesseract engines kept for concurrent OCR. Each engine is used by one task at a time,"
+                    + " so tasks wait for an engine when all of them are busy. Defaults to the processor's number of Concurrent Tasks.")
+            .required(false)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor MAX_ENGINES = new PropertyDescriptor
+            .Builder().name("Max Engines")
+            .description("Maximum number of Tesseract engines kept across the pools of all languages. A language that needs an"
+                    + " engine when the maximum is reached closes an idle engine of another language, or waits for one. Defaults"
+                    + " to the 'Engine Pool Size' times the number of 'Preloaded Languages', or to the 'Engine Pool Size'"
+                    + " if none are preloaded.")
+            .required(false)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final String PAGES_FIRST = "First page";
+    public static final String PAGES_ALL = "All pages";
+
+    public static final PropertyDescriptor PAGES = new PropertyDescriptor
+            .Builder().name("Pages")
+            .description("Which pages of a multi-page image, such as a TIFF or a PDF with an ImageIO plugin installed, are OCR'd. '"
+                    + PAGES_ALL + "' decodes the pages one at a time as they are needed, OCRs several of them in parallel on the"
+                    + " engine pool and writes the text in page order, separating pages with a form feed, so only a few pages are"
+                    + " held in memory no matter how many the image has.")
+            .required(true)
+            .defaultValue(PAGES_FIRST)
+            .allowableValues(PAGES_FIRST, PAGES_ALL)
+            .build();
+
+    public static final PropertyDescriptor REGION_X = new PropertyDescriptor
+            .Builder().name("Region X")
+            .description("Left edge, in pixels, of the region of each page to OCR. Together with 'Region Y', 'Region Width' and"
+                    + " 'Region Height' this limits OCR to a rectangle, and only that rectangle is decoded. Any of them that evaluate"
+                    + " to an empty value default to the edges of the page, so by default the whole page is OCR'd unless the FlowFile"
+                    + " has ocr.roi.x, ocr.roi.y, ocr.roi.width or ocr.roi.height attributes.")
+            .required(false)
+            .expressionLanguageSupported(true)
+            .defaultValue("${ocr.roi.x}")
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor REGION_Y = new PropertyDescriptor
+            .Builder().name("Region Y")
+            .description("Top edge, in pixels, of the region of each page to OCR. See 'Region X'.")
+            .required(false)
+            .expressionLanguageSupported(true)
+            .defaultValue("${ocr.roi.y}")
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor REGION_WIDTH = new PropertyDescriptor
+            .Builder().name("Region Width")
+            .description("Width, in pixels, of the region of each page to OCR. See 'Region X'.")
+            .required(false)
+            .expressionLanguageSupported(true)
+            .defaultValue("${ocr.roi.width}")
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor REGION_HEIGHT = new PropertyDescriptor
+            .Builder().name("Region Height")
+            .description("Height, in pixels, of the region of each page to OCR. See 'Region X'.")
+            .required(false)
+            .expressionLanguageSupported(true)
+            .defaultValue("${ocr.roi.height}")
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor TILE_HEIGHT = new PropertyDescriptor
+            .Builder().name("Tile Height")
+            .description("When set, each page, or its region, is split into horizontal tiles of this many pixels which are decoded"
+                    + " one at a time and OCR'd in parallel on the engine pool. Tiles span the full width so lines of text are only"
+                    + " ever cut where tiles meet. Lines and words recognized in the overlap between tiles are kept only from the tile"
+                    + " that holds their center, which requires the " + ENGINE_NATIVE + " engine. Use this for very large scans that"
+                    + " are slow to OCR on a single engine or too large to decode at once.")
+            .required(false)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor TILE_OVERLAP = new PropertyDescriptor
+            .Builder().name("Tile Overlap")
+            .description("Number of pixels each tile overlaps the one above it. Should be at least the height of a line of text so"
+                    + " a line cut at the bottom of one tile is recognized whole in the next. Must be less than 'Tile Height'.")
+            .required(true)
+            .defaultValue("64")
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final String OUTPUT_TEXT = "Plain text";
+    public static final String OUTPUT_HOCR = "hOCR";
+    public static final String OUTPUT_TSV = "TSV";
+    public static final String OUTPUT_JSON = "JSON";
+
+    public static final PropertyDescriptor OUTPUT_FORMAT = new PropertyDescriptor
+            .Builder().name("Output Format")
+            .description("Format the recognized text is written in. '" + OUTPUT_HOCR + "' is an hOCR document, '" + OUTPUT_TSV
+                    + "' has the columns of Tesseract's TSV output with a row per word and '" + OUTPUT_JSON + "' is an array with"
+                    + " a record per word holding its text, confidence and bounding box. Word positions are relative to the page."
+                    + " All of them are read from the same recognition as the text and require the '" + ENGINE_NATIVE + "' engine.")
+            .required(true)
+            .defaultValue(OUTPUT_TEXT)
+            .allowableValues(OUTPUT_TEXT, OUTPUT_HOCR, OUTPUT_TSV, OUTPUT_JSON)
+            .build();
+
+    public static final String BINARIZATION_NONE = "None";
+    public static final String BINARIZATION_OTSU = "Otsu";
+    public static final String BINARIZATION_SAUVOLA = "Sauvola";
+
+    public static final PropertyDescriptor BINARIZATION = new PropertyDescriptor
+            .Builder().name("Binarization")
+            .description("Converts each image to 1 bit black and white before OCR, which Tesseract recognizes faster. '"
+                    + BINARIZATION_OTSU + "' uses a single threshold for the whole image and suits clean scans. '"
+                    + BINARIZATION_SAUVOLA + "' uses a threshold per pixel from its surroundings and suits unevenly lit"
+                    + " images such as phone photos. Preprocessing is done on each engine's own buffers, which are reused"
+                    + " from image to image.")
+            .required(true)
+            .defaultValue(BINARIZATION_NONE)
+            .allowableValues(BINARIZATION_NONE, BINARIZATION_OTSU, BINARIZATION_SAUVOLA)
+            .build();
+
+    public static final PropertyDescriptor DESKEW = new PropertyDescriptor
+            .Builder().name("Deskew")
+            .description("Rotates each image, by up to 5 degrees, so its lines of text are horizontal before OCR. Word"
+                    + " positions in structured output are those of the straightened image. Can not be combined with"
+                    + " 'Tile Height', as each tile would be straightened on its own.")
+            .required(true)
+            .defaultValue("false")
+            .allowableValues("true", "false")
+            .build();
+
+    public static final PropertyDescriptor SOURCE_DPI = new PropertyDescriptor
+            .Builder().name("Source DPI")
+            .description("Resolution of the incoming images. Together with 'Target DPI' this downscales images to the"
+                    + " resolution Tesseract needs, around 300 DPI for body text, which speeds up OCR on high resolution"
+                    + " scans and photos. Images are never enlarged. Word positions in structured output are scaled back"
+                    + " to the original image.")
+            .required(false)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor TARGET_DPI = new PropertyDescriptor
+            .Builder().name("Target DPI")
+            .description("Resolution images are downscaled to before OCR. See 'Source DPI'.")
+            .required(false)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor RESULT_CACHE_SIZE = new PropertyDescriptor
+            .Builder().name("Result Cache Size")
+            .description("Maximum number of images whose OCR output is kept in memory, keyed by a SHA-256 hash of the FlowFile content,"
+                    + " the language, page segmentation mode, Tesseract configuration values and every other property that changes"
+                    + " the output. FlowFiles with byte identical content, such as retried or resubmitted documents, are then given"
+                    + " the cached output without running Tesseract. 0 disables the in-memory cache.")
+            .required(true)
+            .defaultValue("0")
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor MAX_CACHED_OUTPUT_SIZE = new PropertyDescriptor
+            .Builder().name("Max Cached Output Size")
+            .description("OCR output larger than this is written to the FlowFile but not cached, which together with"
+                    + " 'Result Cache Size' bounds the memory held by the in-memory cache.")
+            .required(true)
+            .defaultValue("1 MB")
+            .addValidator(StandardValidators.DATA_SIZE_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor DISTRIBUTED_CACHE_SERVICE = new PropertyDescriptor
+            .Builder().name("Distributed Cache Service")
+            .description("Optional Controller Service used to share cached OCR output across processors and NiFi nodes. It is consulted"
+                    + " when the in-memory cache misses.")
+            .required(false)
+            .identifiesControllerService(DistributedMapCacheClient.class)
+            .build();
+
     public static final Relationship REL_SUCCESS = new Relationship.Builder()
             .name("success")
             .description("successfully completed OCR on image")
@@ -206,6 +459,26 @@ public class TesseractOCRProcessor extends AbstractProcessor {
         _descriptors.add(TESSERACT_LANGUAGE);
         _descriptors.add(TESSERACT_PAGE_SEG_MODE);
         _descriptors.add(TESSERACT_CONFIGS);
+        _descriptors.add(LANGUAGE_ATTRIBUTE);
+        _descriptors.add(PRELOADED_LANGUAGES);
+        _descriptors.add(ENGINE_MODE);
+        _descriptors.add(ENGINE_POOL_SIZE);
+        _descriptors.add(MAX_ENGINES);
+        _descriptors.add(PAGES);
+        _descriptors.add(REGION_X);
+        _descriptors.add(REGION_Y);
+        _descriptors.add(REGION_WIDTH);
+        _descriptors.add(REGION_HEIGHT);
+        _descriptors.add(TILE_HEIGHT);
+        _descriptors.add(TILE_OVERLAP);
+        _descriptors.add(OUTPUT_FORMAT);
+        _descriptors.add(BINARIZATION);
+        _descriptors.add(DESKEW);
+        _descriptors.add(SOURCE_DPI);
+        _descriptors.add(TARGET_DPI);
+        _descriptors.add(RESULT_CACHE_SIZE);
+        _descriptors.add(MAX_CACHED_OUTPUT_SIZE);
+        _descriptors.add(DISTRIBUTED_CACHE_SERVICE);
         descriptors = Collections.unmodifiableList(_descriptors);
 
         final Set<Relationship> _relationships = new HashSet<>();
@@ -224,18 +497,21 @@ public class TesseractOCRProcessor extends AbstractProcessor {
 
     @Override
     public final List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        return supportedDescriptors;
+    }
 
-        List<PropertyDescriptor> descriptorsNew = new ArrayList<>();
-
-        descriptorsNew.add(TESS_DATA_PATH);
-        descriptorsNew.add(TESSERACT_PAGE_SEG_MODE);
-        descriptorsNew.add(TESSERACT_CONFIGS);
+    /**
+     * @return
+     *  The property descriptors, with the languages installed in the Tessdata directory as the allowable languages.
+     */
+    private static List<PropertyDescriptor> buildSupportedDescriptors(Set<String> languages) {
+        final List<PropertyDescriptor> descriptorsNew = new ArrayList<>(descriptors);
+        descriptorsNew.remove(TESSERACT_LANGUAGE);
         descriptorsNew.add(new PropertyDescriptor.Builder()
                 .fromPropertyDescriptor(TESSERACT_LANGUAGE)
-                .allowableValues(SUPPORTED_LANGUAGES)
+                .allowableValues(languages)
                 .build());
-
-        return descriptorsNew;
+        return Collections.unmodifiableList(descriptorsNew);
     }
 
     @Override
@@ -244,89 +520,524 @@ public class TesseractOCRProcessor extends AbstractProcessor {
 
         if (descriptor.equals(TESS_DATA_PATH)) {
             getLogger().debug("Tesseract Install path was changed. Building list of supported languages");
-            SUPPORTED_LANGUAGES.clear();
-            SUPPORTED_LANGUAGES.add("eng");
-            //File will always exist since the Validator will take care of that.
-            File[] files = getTesseractLanguages(newValue);
+            final Set<String> languages = new TreeSet<>(DEFAULT_LANGUAGES);
+            final Set<String> installed = newValue == null ? Collections.<String>emptySet() : TessdataLanguageIndex.getLanguages(newValue);
 
             //Guard against creating an empty list of allowable values in case the user points to an invalid directory
-            if (files != null && files.length > 0) {
-                for (int i = 0; i < files.length; i++) {
-                    if (getLogger().isDebugEnabled()) {
-                        getLogger().debug("Found Tesseract supported language: " + files[i].getName());
-                    }
-                    SUPPORTED_LANGUAGES.add(StringUtils.split(files[i].getName(), ".")[0]);
+            if (!installed.isEmpty()) {
+                if (getLogger().isDebugEnabled()) {
+                    getLogger().debug("Found Tesseract supported languages: " + installed);
                 }
+                languages.addAll(installed);
             } else {
                 getLogger().debug("No languages found in user specified Tessdata directory: '" + newValue + "'");
             }
+            supportedDescriptors = buildSupportedDescriptors(languages);
+        }
+    }
+
+    @Override
+    protected Collection<ValidationResult> customValidate(ValidationContext context) {
+        final List<ValidationResult> problems = new ArrayList<>(super.customValidate(context));
+
+        if (context.getProperty(TILE_HEIGHT).isSet()
+                && context.getProperty(TILE_OVERLAP).asInteger() >= context.getProperty(TILE_HEIGHT).asInteger()) {
+            problems.add(new ValidationResult.Builder().valid(false).subject(TILE_OVERLAP.getName())
+                    .explanation(TILE_OVERLAP.getName() + " must be less than " + TILE_HEIGHT.getName()).build());
+        }
+        if (OcrOutput.needsLayout(context.getProperty(OUTPUT_FORMAT).getValue(), context.getProperty(TILE_HEIGHT).isSet())
+                && ENGINE_TESS4J.equals(context.getProperty(ENGINE_MODE).getValue())) {
+            //Tiled text is merged from the positions of its lines, which only the native engine reports
+            final String output = context.getProperty(TILE_HEIGHT).isSet() ? "Tiled " + context.getProperty(OUTPUT_FORMAT).getValue()
+                    : context.getProperty(OUTPUT_FORMAT).getValue();
+            problems.add(new ValidationResult.Builder().valid(false).subject(OUTPUT_FORMAT.getName())
+                    .explanation(output + " output requires the " + ENGINE_NATIVE + " engine").build());
+        }
+        if (context.getProperty(TILE_HEIGHT).isSet() && context.getProperty(DESKEW).asBoolean()) {
+            //Each tile would be rotated by its own estimate, leaving the tiles' word positions in different frames
+            problems.add(new ValidationResult.Builder().valid(false).subject(DESKEW.getName())
+                    .explanation(DESKEW.getName() + " can not be combined with " + TILE_HEIGHT.getName()).build());
+        }
+        if (context.getProperty(SOURCE_DPI).isSet() != context.getProperty(TARGET_DPI).isSet()) {
+            problems.add(new ValidationResult.Builder().valid(false).subject(TARGET_DPI.getName())
+                    .explanation(SOURCE_DPI.getName() + " and " + TARGET_DPI.getName() + " must be set together").build());
+        }
 
+        if (context.getProperty(PRELOADED_LANGUAGES).isSet() && context.getProperty(TESS_DATA_PATH).isExpressionLanguagePresent()) {
+            problems.add(new ValidationResult.Builder().valid(false).subject(PRELOADED_LANGUAGES.getName())
+                    .explanation(PRELOADED_LANGUAGES.getName() + " requires a " + TESS_DATA_PATH.getName()
+                            + " without Expression Language").build());
         }
+
+        return problems;
     }
 
     @OnScheduled
     public void onScheduled(final ProcessContext context) {
-        //Setup the Tesseract instance once the processor is scheuled
-        tesseract = new Tesseract();
-        tesseract.setLanguage(context.getProperty(TESSERACT_LANGUAGE).getValue());
-        //tesseract.setPageSegMode((context.getProperty(TESSERACT_PAGE_SEG_MODE).asInteger()));
-        tesseract.setPageSegMode(3);
-        //tesseract.setPageSegMode(7); this works for the powermeter but not cat in the hat
+        //Everything but the Tessdata directory is fixed for the lifetime of the schedule, so resolve it once here
+        final Map<String, String> configs = buildTesseractConfigs(context.getProperty(TESSERACT_CONFIGS).getValue());
+        if (getLogger().isDebugEnabled()) {
+            for (Map.Entry<String, String> entry : configs.entrySet()) {
+                getLogger().debug("Tesseract Config Key : '" + entry.getKey()
+                        + "' Tesseract Config Value : '" + entry.getValue() + "'");
+            }
+        }
+
+        //Only evaluate the Tessdata directory per FlowFile when it may reference FlowFile attributes
+        dataPathPerFlowFile = context.getProperty(TESS_DATA_PATH).isExpressionLanguagePresent();
+        final String dataPath = dataPathPerFlowFile ? null : context.getProperty(TESS_DATA_PATH).evaluateAttributeExpressions().getValue();
+
+        engineSpec = new OcrEngineSpec(dataPath,
+                normalizeLanguages(context.getProperty(TESSERACT_LANGUAGE).getValue()),
+                parsePageSegMode(context.getProperty(TESSERACT_PAGE_SEG_MODE).getValue()),
+                configs,
+                ENGINE_NATIVE.equals(context.getProperty(ENGINE_MODE).getValue()));
+        enginePoolSize = context.getProperty(ENGINE_POOL_SIZE).isSet()
+                ? context.getProperty(ENGINE_POOL_SIZE).asInteger()
+                : context.getMaxConcurrentTasks();
+        final String preloaded = context.getProperty(PRELOADED_LANGUAGES).getValue();
+        engineLimit = new OcrEnginePool.Limit(context.getProperty(MAX_ENGINES).isSet()
+                ? context.getProperty(MAX_ENGINES).asInteger()
+                : enginePoolSize * Math.max(1, StringUtils.isBlank(preloaded) ? 0 : StringUtils.split(preloaded, ",").length));
+
+        allPages = PAGES_ALL.equals(context.getProperty(PAGES).getValue());
+        tileHeight = context.getProperty(TILE_HEIGHT).isSet() ? context.getProperty(TILE_HEIGHT).asInteger() : 0;
+        tileOverlap = context.getProperty(TILE_OVERLAP).asInteger();
+        outputFormat = context.getProperty(OUTPUT_FORMAT).getValue();
+
+        final String binarizationValue = context.getProperty(BINARIZATION).getValue();
+        binarization = BINARIZATION_OTSU.equals(binarizationValue) ? ImagePreprocessor.Binarization.OTSU
+                : BINARIZATION_SAUVOLA.equals(binarizationValue) ? ImagePreprocessor.Binarization.SAUVOLA
+                : ImagePreprocessor.Binarization.NONE;
+        deskew = context.getProperty(DESKEW).asBoolean();
+        scale = context.getProperty(TARGET_DPI).isSet()
+                ? Math.min(1.0, (double) context.getProperty(TARGET_DPI).asInteger() / context.getProperty(SOURCE_DPI).asInteger())
+                : 1.0;
+        preprocess = binarization != ImagePreprocessor.Binarization.NONE || deskew || scale < 1.0;
+
+        final int cacheSize = context.getProperty(RESULT_CACHE_SIZE).asInteger();
+        final DistributedMapCacheClient distributedCache = context.getProperty(DISTRIBUTED_CACHE_SERVICE).asControllerService(DistributedMapCacheClient.class);
+        final int maxCachedOutputSize = context.getProperty(MAX_CACHED_OUTPUT_SIZE).asDataSize(DataUnit.B).intValue();
+        resultCache = cacheSize > 0 || distributedCache != null
+                ? new OcrResultCache(cacheSize, maxCachedOutputSize, distributedCache, getLogger()) : null;
+        languageAttribute = context.getProperty(LANGUAGE_ATTRIBUTE).getValue();
+        cacheSettings = outputFormat + ":" + allPages + ":" + tileHeight + ":" + tileOverlap + ":" + binarization + ":" + deskew + ":" + scale;
+        if (allPages || tileHeight > 0) {
+            //One worker per engine, any more would only wait for an engine to be given back
+            pageExecutor = Executors.newFixedThreadPool(enginePoolSize, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "TesseractOCR worker " + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        preloadLanguages(preloaded);
     }
 
+    /**
+     * Initializes the engines of the preloaded languages, once everything the engine factory depends on is resolved.
+     */
+    private void preloadLanguages(final String preloaded) {
+        if (StringUtils.isBlank(preloaded)) {
+            return;
+        }
+        for (String language : StringUtils.split(preloaded, ",")) {
+            final OcrEngineSpec spec = engineSpec.withLanguage(normalizeLanguages(language));
+            try {
+                getEnginePool(spec).prestart(enginePoolSize);
+            } catch (OcrException ex) {
+                throw new ProcessException("Unable to preload Tesseract engines for " + spec, ex);
+            }
+        }
+    }
 
+    @OnStopped
+    public void onStopped() {
+        resultCache = null;
+        if (pageExecutor != null) {
+            pageExecutor.shutdownNow();
+            pageExecutor = null;
+        }
+        for (OcrEnginePool pool : enginePools.values()) {
+            pool.close();
+        }
+        enginePools.clear();
+    }
 
     @Override
     public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
-        final FlowFile flowFile = session.get();
-        if ( flowFile == null ) {
+        final List<FlowFile> flowFiles = session.get(BATCH_SIZE);
+        if ( flowFiles.isEmpty() ) {
             return;
         }
 
+        //Group the FlowFiles by the engine they need so each group looks up its pool once
+        final Map<OcrEngineSpec, List<FlowFile>> groups = new LinkedHashMap<>();
+        for (FlowFile flowFile : flowFiles) {
+            OcrEngineSpec spec = dataPathPerFlowFile
+                    ? engineSpec.withDatapath(context.getProperty(TESS_DATA_PATH).evaluateAttributeExpressions(flowFile).getValue())
+                    : engineSpec;
+            final String attribute = languageAttribute == null ? null : flowFile.getAttribute(languageAttribute);
+            final String language = attribute == null ? null : normalizeLanguages(attribute);
+            if (!StringUtils.isBlank(language)) {
+                //Checked up front so a FlowFile can not create a pool for a language that is not installed
+                final Set<String> installed = TessdataLanguageIndex.getLanguages(spec.getDatapath());
+                final String missing = missingLanguage(language, installed);
+                if (missing != null) {
+                    getLogger().error("Language '{}' requested by {} is not installed in {}", new Object[] {missing, flowFile, spec.getDatapath()});
+                    session.transfer(session.clone(flowFile), REL_ORIGINAL);
+                    session.transfer(session.penalize(flowFile), REL_FAILURE);
+                    continue;
+                }
+                spec = spec.withLanguage(language);
+            }
+            List<FlowFile> group = groups.get(spec);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(spec, group);
+            }
+            group.add(flowFile);
+        }
+
+        for (Map.Entry<OcrEngineSpec, List<FlowFile>> group : groups.entrySet()) {
+            final OcrEnginePool pool = getEnginePool(group.getKey());
+            for (FlowFile flowFile : group.getValue()) {
+                if (!recognize(context, session, flowFile, group.getKey(), pool)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Performs OCR on the FlowFile's image, page by page and tile by tile, and transfers it along with a clone of the original.
+     *
+     * @return
+     *  False if the thread was interrupted and the session rolled back.
+     */
+    private boolean recognize(final ProcessContext context, final ProcessSession session, final FlowFile flowFile,
+                              final OcrEngineSpec spec, final OcrEnginePool pool) {
+        final int maxPages = allPages ? Integer.MAX_VALUE : 1;
+        final boolean parallel = allPages || tileHeight > 0;
+        //Images are decoded while earlier ones are recognized, keep one decoded image ready for each worker
+        final String format = outputFormat;
+        final boolean layout = OcrOutput.needsLayout(format, tileHeight > 0);
+        final ParallelOcr ocr = parallel
+                ? new ParallelOcr(pageExecutor, pool, pool.getMaxSize() + 1, layout)
+                : new ParallelOcr(null, pool, 1, layout);
+        final AtomicInteger pageCount = new AtomicInteger();
+        final AtomicReference<String> mimeType = new AtomicReference<>();
+        final long[] confidence = new long[2];      // Sum and count of the mean confidences of the tiles.
+
         //Transfer the original
         session.transfer(session.clone(flowFile), REL_ORIGINAL);
-        final AtomicBoolean errors = new AtomicBoolean(false);
-
-        FlowFile ff = session.write(flowFile, new StreamCallback() {
-            @Override
-            public void process(InputStream inputStream, OutputStream outputStream) throws IOException {
-                tesseract.setDatapath(context.getProperty(TESS_DATA_PATH).evaluateAttributeExpressions(flowFile).getValue());
-
-                //Builds the list of Tesseract configs.
-                Map<String, String> configs = buildTesseractConfigs(context.getProperty(TESSERACT_CONFIGS).getValue());
-                for (Map.Entry<String, String> entry : configs.entrySet()) {
-                    getLogger().debug("Tesseract Config Key : '" + entry.getKey()
-                            + "' Tesseract Config Value : '" + entry.getValue() + "'");
-                    tesseract.setTessVariable(entry.getKey(), entry.getValue());
-                }
 
-                try {
-                    BufferedImage imBuff = ImageIO.read(inputStream);
-                    outputStream.write(tesseract.doOCR(imBuff).getBytes());
-                } catch (TesseractException te) {
-                    getLogger().error(te.getMessage());
-                    if (te.getCause().getMessage().equals("image == null!")) {
-                        session.transfer(flowFile, REL_UNSUPPORTED_IMAGE_FORMAT);
-                    } else {
-                        session.transfer(session.penalize(flowFile), REL_FAILURE);
+        final int[] region;
+        try {
+            region = new int[] {
+                    asInt(context.getProperty(REGION_X).evaluateAttributeExpressions(flowFile).getValue(), 0),
+                    asInt(context.getProperty(REGION_Y).evaluateAttributeExpressions(flowFile).getValue(), 0),
+                    asInt(context.getProperty(REGION_WIDTH).evaluateAttributeExpressions(flowFile).getValue(), -1),
+                    asInt(context.getProperty(REGION_HEIGHT).evaluateAttributeExpressions(flowFile).getValue(), -1)};
+        } catch (NumberFormatException ex) {
+            getLogger().error("Region of interest for {} is not a number", new Object[] {flowFile, ex});
+            session.transfer(session.penalize(flowFile), REL_FAILURE);
+            return true;
+        }
+
+        final OcrResultCache cache = resultCache;
+        final String cacheKey;
+        if (cache != null) {
+            final MessageDigest digest = OcrResultCache.newDigest();
+            try {
+                session.read(flowFile, new InputStreamCallback() {
+                    @Override
+                    public void process(InputStream in) throws IOException {
+                        final byte[] buffer = new byte[8192];
+                        for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                            digest.update(buffer, 0, n);
+                        }
+                    }
+                });
+            } catch (ProcessException ex) {
+                getLogger().error("Unable to read content of {}", new Object[] {flowFile, ex});
+                session.transfer(session.penalize(flowFile), REL_FAILURE);
+                return true;
+            }
+            cacheKey = OcrResultCache.key(digest.digest(), spec.getDatapath() + ":" + spec.isNativeApi() + ":" + spec.getLanguage()
+                    + ":" + spec.getPageSegMode() + ":" + spec.getVariables() + ":" + Arrays.toString(region) + ":" + cacheSettings);
+
+            final OcrResultCache.Entry cached = cache.get(cacheKey);
+            if (cached != null) {
+                session.adjustCounter("OCR Cache Hits", 1, false);
+                FlowFile ff = session.write(flowFile, new OutputStreamCallback() {
+                    @Override
+                    public void process(OutputStream outputStream) throws IOException {
+                        outputStream.write(cached.getContent().getBytes(StandardCharsets.UTF_8));
+                    }
+                });
+                session.transfer(session.putAllAttributes(ff, cached.getAttributes()), REL_SUCCESS);
+                return true;
+            }
+        } else {
+            cacheKey = null;
+        }
+        //Keeps a copy of the output for the cache, as long as it is small enough to cache
+        final AtomicReference<OcrResultCache.Capture> cachedOutput = new AtomicReference<>();
+
+        final FlowFile ff;
+        try {
+            ff = session.write(flowFile, new StreamCallback() {
+                @Override
+                public void process(InputStream inputStream, final OutputStream outputStream) throws IOException {
+                    final ImageInputStream imageStream = ImageIO.createImageInputStream(inputStream);
+                    if (imageStream == null) {
+                        throw new UnsupportedImageException();
+                    }
+                    //May be backed by a temporary file, so it is closed on every path including unsupported images
+                    try {
+                        final Iterator<ImageReader> readers = ImageIO.getImageReaders(imageStream);
+                        if (!readers.hasNext()) {
+                            throw new UnsupportedImageException();
+                        }
+
+                        final ImageReader reader = readers.next();
+                        try {
+                            //Seeking forward only lets the reader discard pages that have already been decoded
+                            reader.setInput(imageStream, true, true);
+                            final TileSource tiles = new TileSource(reader, maxPages, region, tileHeight, tileOverlap);
+                            if (cacheKey != null) {
+                                cachedOutput.set(cache.capture(outputStream));
+                            }
+                            final OcrOutput output = OcrOutput.create(format, cacheKey == null ? outputStream : cachedOutput.get());
+                            output.begin();
+                            ocr.run(tiles, new ParallelOcr.ResultHandler() {
+                                @Override
+                                public void accept(int index, OcrResult result) throws IOException {
+                                    output.write(tiles.pollTile(), result);
+                                    if (result.getMeanConfidence() >= 0) {
+                                        confidence[0] += result.getMeanConfidence();
+                                        confidence[1]++;
+                                    }
+                                }
+                            });
+                            output.end();
+                            pageCount.set(tiles.getPageCount());
+                            mimeType.set(output.getMimeType());
+                        } catch (OcrException ex) {
+                            throw new IOException(ex.getMessage(), ex);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                            throw new IOException("Interrupted while performing OCR", ex);
+                        } finally {
+                            reader.dispose();
+                        }
+                    } finally {
+                        imageStream.close();
                     }
-                    errors.set(true);
 
-                } catch (Exception ex) {
-                    getLogger().error(ex.getMessage());
-                    session.transfer(flowFile, REL_FAILURE);
-                    errors.set(true);
+                    if (pageCount.get() == 0) {
+                        throw new UnsupportedImageException();
+                    }
                 }
+            });
+        } catch (ProcessException ex) {
+            if (Thread.currentThread().isInterrupted()) {
+                session.rollback();
+                return false;
+            }
+            if (isUnsupportedImage(ex)) {
+                session.transfer(flowFile, REL_UNSUPPORTED_IMAGE_FORMAT);
+            } else {
+                getLogger().error("Unable to perform OCR on {}", new Object[] {flowFile, ex});
+                session.transfer(session.penalize(flowFile), REL_FAILURE);
             }
-        });
+            return true;
+        }
 
-        if (!errors.get()) {
-            session.transfer(ff, REL_SUCCESS);
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("ocr.page.count", String.valueOf(pageCount.get()));
+        attributes.put(CoreAttributes.MIME_TYPE.key(), mimeType.get());
+        if (confidence[1] > 0) {
+            attributes.put("ocr.mean.confidence", String.valueOf(confidence[0] / confidence[1]));
+        }
+        final String cachedContent = cacheKey == null ? null : cachedOutput.get().getContent();
+        if (cachedContent != null) {
+            cache.put(cacheKey, new OcrResultCache.Entry(cachedContent, attributes));
         }
+        session.transfer(session.putAllAttributes(ff, attributes), REL_SUCCESS);
+        return true;
+    }
 
+    /**
+     * @return
+     *  The first of the languages, which may be combined as in 'eng+deu', that is not installed, or null if all of them are.
+     */
+    private static String missingLanguage(final String languages, final Set<String> installed) {
+        for (String language : StringUtils.split(languages, "+")) {
+            if (!installed.contains(language)) {
+                return language;
+            }
+        }
+        return null;
     }
 
+    /**
+     * @return
+     *  The languages, which may be combined as in 'eng+deu', trimmed and without duplicates. Their order is kept as
+     *  Tesseract treats the first language as the primary one.
+     */
+    static String normalizeLanguages(final String languages) {
+        final Set<String> ordered = new LinkedHashSet<>();
+        for (String language : StringUtils.split(languages, "+")) {
+            if (!StringUtils.isBlank(language)) {
+                ordered.add(language.trim());
+            }
+        }
+        return StringUtils.join(ordered, "+");
+    }
+
+    /**
+     * @return
+     *  The mode number a 'Tesseract Page Segmentation Mode' value, such as '3 = Fully automatic page segmentation, but no OSD', starts with.
+     */
+    static int parsePageSegMode(final String value) {
+        final int end = value.indexOf('=');
+        return Integer.parseInt((end < 0 ? value : value.substring(0, end)).trim());
+    }
 
+    private static int asInt(final String value, final int defaultValue) {
+        return StringUtils.isBlank(value) ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private static boolean isUnsupportedImage(Throwable t) {
+        for (; t != null; t = t.getCause()) {
+            if (t instanceof UnsupportedImageException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Thrown from within the write callback when no ImageIO reader understands the content.
+     */
+    private static class UnsupportedImageException extends IOException {
+        UnsupportedImageException() {
+            super("No image reader found for the content");
+        }
+    }
+
+    /**
+     * Decodes the pages of an image one tile at a time, in order. Only the region of interest of each page is decoded,
+     * as a single tile unless a tile height is set.
+     */
+    private static class TileSource implements ParallelOcr.ImageSource {
+        private final ImageReader reader;
+        private final int maxPages;
+        private final int[] region;             // x, y, width and height, with -1 for the rest of the page.
+        private final int tileHeight;
+        private final int tileOverlap;
+        private final Deque<Tile> tiles = new ArrayDeque<>();   // Tiles handed out but not yet polled.
+        private int page = -1;
+        private int pageCount = 0;
+        private Rectangle pageRegion;
+        private int nextY;
+
+        TileSource(ImageReader reader, int maxPages, int[] region, int tileHeight, int tileOverlap) {
+            this.reader = reader;
+            this.maxPages = maxPages;
+            this.region = region;
+            this.tileHeight = tileHeight;
+            this.tileOverlap = tileOverlap;
+        }
+
+        @Override
+        public BufferedImage next() throws IOException {
+            if (pageRegion == null || nextY >= pageRegion.y + pageRegion.height) {
+                if (!nextPage()) {
+                    return null;
+                }
+            }
+
+            final int height = tileHeight > 0 ? Math.min(tileHeight, pageRegion.y + pageRegion.height - nextY) : pageRegion.height;
+            final Rectangle tile = new Rectangle(pageRegion.x, nextY, pageRegion.width, height);
+            final boolean first = nextY == pageRegion.y;
+            //The last tile is the one reaching the bottom of the region
+            final boolean last = nextY + height >= pageRegion.y + pageRegion.height;
+            nextY = last ? nextY + height : nextY + height - tileOverlap;
+
+            final ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(tile);
+            final BufferedImage image = reader.read(page, param);
+            //Tiles meet in the middle of their overlap
+            tiles.add(new Tile(page, tile,
+                    first ? Integer.MIN_VALUE : tile.y + tileOverlap / 2,
+                    last ? Integer.MAX_VALUE : nextY + tileOverlap / 2));
+            return image;
+        }
+
+        private boolean nextPage() throws IOException {
+            if (page + 1 >= maxPages) {
+                return false;
+            }
+            final Rectangle bounds;
+            try {
+                bounds = new Rectangle(0, 0, reader.getWidth(page + 1), reader.getHeight(page + 1));
+            } catch (IndexOutOfBoundsException ex) {
+                return false;
+            }
+            page++;
+            pageCount++;
+
+            pageRegion = bounds.intersection(new Rectangle(region[0], region[1],
+                    region[2] < 0 ? bounds.width - region[0] : region[2],
+                    region[3] < 0 ? bounds.height - region[1] : region[3]));
+            if (pageRegion.isEmpty()) {
+                throw new IOException("Region of interest " + region[0] + "," + region[1] + " " + region[2] + "x" + region[3]
+                        + " lies outside of page " + page + ", which is " + bounds.width + "x" + bounds.height);
+            }
+            nextY = pageRegion.y;
+            return true;
+        }
+
+        Tile pollTile() {
+            return tiles.poll();
+        }
+
+        int getPageCount() {
+            return pageCount;
+        }
+    }
+
+    /**
+     * @return
+     *  The pool of engines for the spec, creating it the first time the spec is used.
+     */
+    private OcrEnginePool getEnginePool(final OcrEngineSpec spec) {
+        OcrEnginePool pool = enginePools.get(spec);
+        if (pool == null) {
+            final OcrEnginePool created = new OcrEnginePool(new OcrEnginePool.Factory() {
+                @Override
+                public OcrEngine create() throws OcrException {
+                    final OcrEngine engine = spec.createEngine();
+                    return preprocess ? new PreprocessingOcrEngine(engine, new ImagePreprocessor(binarization, deskew, scale)) : engine;
+                }
+            }, enginePoolSize, engineLimit);
+            pool = enginePools.putIfAbsent(spec, created);
+            if (pool == null) {
+                pool = created;
+            } else {
+                //Lost the race, unregisters it from the engine limit
+                created.close();
+            }
+        }
+        return pool;
+    }
 
     /**
      * Build the key/value pairs of Tesseract configuration values that will be passed to Tesseract.
@@ -350,26 +1061,4 @@ public class TesseractOCRProcessor extends AbstractProcessor {
         }
         return configs;
     }
-
-    /**
-     * Traverses the TessData directory and locates all of the installed languages so they may be
-     * presented to the user as a list of allowableValues.
-     *
-     * @param tessDataPath
-     *  PropertyDescriptor String value described the path of the TessData directory.
-     *
-     * @return
-     *  Array of File references to the Tesseract language files.
-     */
-    public static File[] getTesseractLanguages(String tessDataPath) {
-        //File will always exist since the Validator will take care of that.
-        File installFile = new File(tessDataPath);
-        File[] files = installFile.listFiles(new FileFilter() {
-            @Override
-            public boolean accept(File pathname) {
-                return pathname.getName().endsWith(TESS_LANG_EXTENSION);
-            }
-        });
-        return files;
-    }
-}
\ No newline at end of file
+}
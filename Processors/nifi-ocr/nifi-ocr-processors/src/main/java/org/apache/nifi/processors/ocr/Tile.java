@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.ocr;
+
+import java.awt.Rectangle;
+
+import org.apache.nifi.processors.ocr.engine.OcrWord;
+
+/**
+ * The part of a page an image was decoded from. Tiles of a page overlap, each word recognized twice is kept only
+ * from the tile where its center lies in the upper or lower half of the overlap.
+ */
+final class Tile {
+
+    private final int page;
+    private final Rectangle region;
+    private final int keepTop;
+    private final int keepBottom;
+
+    /**
+     * @param page
+     *  Page index, starting at 0.
+     * @param region
+     *  Pixels of the page the tile covers.
+     * @param keepTop
+     *  Words centered above this row of the page are left to the tile above.
+     * @param keepBottom
+     *  Words centered on or below this row of the page are left to the tile below.
+     */
+    Tile(int page, Rectangle region, int keepTop, int keepBottom) {
+        this.page = page;
+        this.region = region;
+        this.keepTop = keepTop;
+        this.keepBottom = keepBottom;
+    }
+
+    int getPage() {
+        return page;
+    }
+
+    Rectangle getRegion() {
+        return region;
+    }
+
+    /**
+     * @return
+     *  Whether no other tile overlaps this one, i.e. it covers the whole region of interest of its page.
+     */
+    boolean isWhole() {
+        return keepTop == Integer.MIN_VALUE && keepBottom == Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return
+     *  Whether the word, positioned relative to this tile, belongs to this tile rather than an overlapping one.
+     */
+    boolean keeps(OcrWord word) {
+        return keeps(word.getTop(), word.getHeight());
+    }
+
+    /**
+     * @return
+     *  Whether the box spanning the rows, relative to this tile, belongs to this tile rather than an overlapping one.
+     */
+    boolean keeps(int top, int height) {
+        final int center = region.y + top + height / 2;
+        return center >= keepTop && center < keepBottom;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.ocr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.nifi.processors.ocr.engine.OcrResult;
+import org.apache.nifi.processors.ocr.engine.OcrWord;
+import org.junit.Test;
+
+public class OcrOutputTest {
+
+    @Test
+    public void testTsvRowsArePositionedOnThePage() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OcrOutput output = OcrOutput.create(TesseractOCRProcessor.OUTPUT_TSV, out);
+        output.begin();
+        output.write(new Tile(0, new Rectangle(10, 20, 100, 50), Integer.MIN_VALUE, Integer.MAX_VALUE),
+                new OcrResult("Quick fox\n", 91, Arrays.asList(
+                        new OcrWord("Quick", 95.5f, 1, 2, 30, 10, 1, 1, 1, 1),
+                        new OcrWord("fox", 87.0f, 40, 2, 20, 10, 1, 1, 1, 2)), null));
+        output.end();
+
+        String[] rows = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, rows.length);
+        assertEquals("5\t1\t1\t1\t1\t1\t11\t22\t30\t10\t95.5\tQuick", rows[1]);
+        assertEquals("5\t1\t1\t1\t1\t2\t50\t22\t20\t10\t87.0\tfox", rows[2]);
+    }
+
+    @Test
+    public void testOverlappingTilesKeepEachWordOnce() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OcrOutput output = OcrOutput.create(TesseractOCRProcessor.OUTPUT_TSV, out);
+        output.begin();
+        // Tiles 0-100 and 80-180 meet at row 90
+        output.write(new Tile(0, new Rectangle(0, 0, 100, 100), Integer.MIN_VALUE, 90),
+                new OcrResult("", 90, Arrays.asList(
+                        new OcrWord("above", 90, 0, 10, 30, 10, 1, 1, 1, 1),
+                        new OcrWord("shared", 90, 0, 84, 30, 10, 1, 1, 2, 1)), null));
+        output.write(new Tile(0, new Rectangle(0, 80, 100, 100), 90, Integer.MAX_VALUE),
+                new OcrResult("", 90, Arrays.asList(
+                        new OcrWord("shared", 90, 0, 4, 30, 10, 1, 1, 1, 1),
+                        new OcrWord("below", 90, 0, 50, 30, 10, 1, 1, 2, 1)), null));
+        output.end();
+
+        String[] rows = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertEquals(4, rows.length);
+        assertEquals("above", rows[1].substring(rows[1].lastIndexOf('\t') + 1));
+        assertEquals("shared", rows[2].substring(rows[2].lastIndexOf('\t') + 1));
+        assertEquals("below", rows[3].substring(rows[3].lastIndexOf('\t') + 1));
+        // Blocks are numbered across the tiles of the page
+        assertEquals("2", rows[3].split("\t")[2]);
+    }
+
+    @Test
+    public void testTiledTextKeepsEachLineFromTheTileHoldingItsCenter() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OcrOutput output = OcrOutput.create(TesseractOCRProcessor.OUTPUT_TEXT, out);
+        output.begin();
+        // Tiles 0-100 and 80-180 meet at row 90. The upper tile sees "cut line" only partially, at rows 94-100,
+        // and garbles it, while "whole line" at rows 80-88 lies entirely within the overlap and is read by both tiles.
+        output.write(new Tile(0, new Rectangle(0, 0, 100, 100), Integer.MIN_VALUE, 90),
+                new OcrResult("", 90, Arrays.asList(
+                        new OcrWord("above", 90, 0, 10, 30, 10, 1, 1, 1, 1),
+                        new OcrWord("whole", 90, 0, 80, 30, 8, 1, 1, 2, 1),
+                        new OcrWord("line", 90, 40, 80, 20, 8, 1, 1, 2, 2),
+                        new OcrWord("cvt", 40, 0, 94, 30, 6, 1, 1, 3, 1),
+                        new OcrWord("lme", 40, 40, 94, 20, 6, 1, 1, 3, 2)), null));
+        output.write(new Tile(0, new Rectangle(0, 80, 100, 100), 90, Integer.MAX_VALUE),
+                new OcrResult("", 90, Arrays.asList(
+                        new OcrWord("whole", 90, 0, 0, 30, 8, 1, 1, 1, 1),
+                        new OcrWord("line", 90, 40, 0, 20, 8, 1, 1, 1, 2),
+                        new OcrWord("cut", 90, 0, 14, 30, 10, 1, 1, 2, 1),
+                        new OcrWord("line", 90, 40, 14, 20, 10, 1, 1, 2, 2),
+                        new OcrWord("below", 90, 0, 50, 30, 10, 2, 1, 1, 1)), null));
+        output.end();
+
+        assertEquals("above\nwhole line\ncut line\n\nbelow\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static String hocr(int lineTop) {
+        return "  <div class='ocr_page' id='page_1' title='image \"\"; bbox 0 0 100 100; ppageno 0'>\n"
+                + "   <div class='ocr_carea' id='block_1_1' title=\"bbox 0 0 60 " + (lineTop + 10) + "\">\n"
+                + "    <p class='ocr_par' id='par_1_1' lang='eng' title=\"bbox 0 0 60 " + (lineTop + 10) + "\">\n"
+                + "     <span class='ocr_line' id='line_1_1' title=\"bbox 0 0 60 10; baseline 0 -2\">"
+                + "<span class='ocrx_word' id='word_1_1' title='bbox 0 0 60 10; x_wconf 90'>first</span>\n"
+                + "     </span>\n"
+                + "     <span class='ocr_line' id='line_1_2' title=\"bbox 0 " + lineTop + " 60 " + (lineTop + 10) + "; baseline 0 -2\">"
+                + "<span class='ocrx_word' id='word_1_2' title='bbox 0 " + lineTop + " 60 " + (lineTop + 10) + "; x_wconf 90'>second</span>\n"
+                + "     </span>\n"
+                + "    </p>\n"
+                + "   </div>\n"
+                + "  </div>\n";
+    }
+
+    @Test
+    public void testHocrOfOverlappingTilesHasUniqueIdsAndEachLineOnce() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OcrOutput output = OcrOutput.create(TesseractOCRProcessor.OUTPUT_HOCR, out);
+        output.begin();
+        // Tiles 0-100 and 80-180 meet at row 90, the upper tile's second line at rows 84-94 is the lower tile's first
+        output.write(new Tile(0, new Rectangle(0, 0, 100, 100), Integer.MIN_VALUE, 90), new OcrResult("", 90, Arrays.<OcrWord>asList(), hocr(84)));
+        output.write(new Tile(0, new Rectangle(0, 80, 100, 100), 90, Integer.MAX_VALUE), new OcrResult("", 90, Arrays.<OcrWord>asList(), hocr(50)));
+        output.end();
+
+        String hocr = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(hocr.contains("id='page_1'"));
+        assertTrue(hocr.contains("id='page_2'"));
+        assertTrue(hocr.contains("id='line_1_1' title=\"bbox 0 0 60 10;"));
+        assertTrue(hocr.contains("id='line_1_2' title=\"bbox 0 84 60 94;"));
+        assertFalse(hocr.contains("line_2_1"));
+        assertTrue(hocr.contains("id='line_2_2' title=\"bbox 0 130 60 140;"));
+        assertEquals(3, hocr.split("class='ocr_line'", -1).length - 1);
+        assertEquals(3, hocr.split("</span>\n     </span>", -1).length - 1);
+    }
+
+    @Test
+    public void testTextPagesAreSeparatedByFormFeeds() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OcrOutput output = OcrOutput.create(TesseractOCRProcessor.OUTPUT_TEXT, out);
+        output.begin();
+        output.write(new Tile(0, new Rectangle(0, 0, 10, 10), Integer.MIN_VALUE, Integer.MAX_VALUE),
+                new OcrResult("one\n", 90, Arrays.<OcrWord>asList(), null));
+        output.write(new Tile(1, new Rectangle(0, 0, 10, 10), Integer.MIN_VALUE, Integer.MAX_VALUE),
+                new OcrResult("two\n", 90, Arrays.<OcrWord>asList(), null));
+        output.end();
+
+        assertEquals("one\n\ftwo\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
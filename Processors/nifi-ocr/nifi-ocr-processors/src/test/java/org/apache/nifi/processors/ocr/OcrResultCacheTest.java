@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.ocr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class OcrResultCacheTest {
+
+    private static OcrResultCache.Entry entry(String content) {
+        return new OcrResultCache.Entry(content, Collections.singletonMap("ocr.page.count", "1"));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        OcrResultCache cache = new OcrResultCache(2, 1024, null, null);
+        cache.put("a", entry("a"));
+        cache.put("b", entry("b"));
+        assertNotNull(cache.get("a"));
+
+        cache.put("c", entry("c"));
+        assertNull(cache.get("b"));
+        assertEquals("a", cache.get("a").getContent());
+        assertEquals("c", cache.get("c").getContent());
+        assertEquals("1", cache.get("c").getAttributes().get("ocr.page.count"));
+    }
+
+    @Test
+    public void testKeyDependsOnContentAndSettings() {
+        byte[] hash = OcrResultCache.newDigest().digest("image".getBytes(StandardCharsets.UTF_8));
+        String key = OcrResultCache.key(hash, "eng:3");
+        assertEquals(key, OcrResultCache.key(hash.clone(), "eng:3"));
+        assertFalse(key.equals(OcrResultCache.key(hash, "deu:3")));
+        assertFalse(key.equals(OcrResultCache.key(hash, "eng:6")));
+        assertFalse(key.equals(OcrResultCache.key(OcrResultCache.newDigest().digest("other".getBytes(StandardCharsets.UTF_8)), "eng:3")));
+    }
+
+    @Test
+    public void testCaptureDropsOutputLargerThanAnEntry() throws IOException {
+        OcrResultCache cache = new OcrResultCache(2, 8, null, null);
+
+        ByteArrayOutputStream flowFile = new ByteArrayOutputStream();
+        OcrResultCache.Capture capture = cache.capture(flowFile);
+        capture.write("12345678".getBytes(StandardCharsets.UTF_8));
+        assertEquals("12345678", capture.getContent());
+
+        capture.write('9');
+        assertNull(capture.getContent());
+        assertEquals("123456789", new String(flowFile.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
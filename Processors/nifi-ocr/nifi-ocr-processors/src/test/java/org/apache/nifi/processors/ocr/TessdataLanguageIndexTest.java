@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.ocr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+public class TessdataLanguageIndexTest {
+
+    @Test
+    public void testListingIsCachedUntilTheDirectoryChanges() throws Exception {
+        File tessdata = Files.createTempDirectory("tessdata").toFile();
+        try {
+            assertTrue(new File(tessdata, "eng.traineddata").createNewFile());
+            assertTrue(new File(tessdata, "eng.user-words").createNewFile());
+            long modified = System.currentTimeMillis() - 60000L;
+            assertTrue(tessdata.setLastModified(modified));
+            assertEquals(new TreeSet<>(Arrays.asList("eng")), TessdataLanguageIndex.getLanguages(tessdata.getPath()));
+
+            // Not seen while the directory reports the modification time of the cached listing
+            assertTrue(new File(tessdata, "deu.traineddata").createNewFile());
+            assertTrue(tessdata.setLastModified(modified));
+            assertEquals(new TreeSet<>(Arrays.asList("eng")), TessdataLanguageIndex.getLanguages(tessdata.getPath()));
+
+            assertTrue(tessdata.setLastModified(modified + 1000L));
+            assertEquals(new TreeSet<>(Arrays.asList("deu", "eng")), TessdataLanguageIndex.getLanguages(tessdata.getPath()));
+        } finally {
+            for (File file : tessdata.listFiles()) {
+                file.delete();
+            }
+            tessdata.delete();
+        }
+    }
+
+    @Test
+    public void testMissingDirectoryHasNoLanguages() {
+        assertTrue(TessdataLanguageIndex.getLanguages("/does/not/exist/tessdata").isEmpty());
+    }
+}
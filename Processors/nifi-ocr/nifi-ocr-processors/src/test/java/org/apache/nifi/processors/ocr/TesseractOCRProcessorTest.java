@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.processors.ocr;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.TreeSet;
+
+import org.apache.nifi.components.AllowableValue;
+import org.junit.Test;
+
+public class TesseractOCRProcessorTest {
+
+    @Test
+    public void testParsesEveryPageSegmentationMode() {
+        TreeSet<Integer> modes = new TreeSet<>();
+        for (AllowableValue value : TesseractOCRProcessor.TESSERACT_PAGE_SEG_MODE.getAllowableValues()) {
+            int mode = TesseractOCRProcessor.parsePageSegMode(value.getValue());
+            assertEquals(value.getValue(), mode + " = ", value.getValue().substring(0, value.getValue().indexOf('=') + 2));
+            modes.add(mode);
+        }
+        assertEquals(11, modes.size());
+        assertEquals(0, (int) modes.first());
+        assertEquals(10, (int) modes.last());
+
+        assertEquals(3, TesseractOCRProcessor.parsePageSegMode(TesseractOCRProcessor.TESSERACT_PAGE_SEG_MODE.getDefaultValue()));
+        assertEquals(10, TesseractOCRProcessor.parsePageSegMode("10 = Treat the image as a single character"));
+        assertEquals(6, TesseractOCRProcessor.parsePageSegMode(" 6 "));
+    }
+
+    @Test
+    public void testNormalizesCombinedLanguagesKeepingTheirOrder() {
+        assertEquals("eng", TesseractOCRProcessor.normalizeLanguages(" eng "));
+        assertEquals("eng+deu", TesseractOCRProcessor.normalizeLanguages("eng+deu"));
+        assertEquals("deu+eng", TesseractOCRProcessor.normalizeLanguages("deu + eng"));
+        assertEquals("eng+deu", TesseractOCRProcessor.normalizeLanguages("eng+deu+eng+"));
+    }
+}
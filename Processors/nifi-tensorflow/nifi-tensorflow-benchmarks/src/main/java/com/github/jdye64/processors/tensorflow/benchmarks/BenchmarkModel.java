@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdye64.processors.tensorflow.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.tensorflow.DataType;
+import org.tensorflow.Graph;
+import org.tensorflow.Output;
+import org.tensorflow.Tensor;
+
+/**
+ * Builds the small image classification model and the synthetic images the benchmarks run against.
+ *
+ * The model has the same interface as the Inception graph LabelImageProcessor is normally configured with, a
+ * [N, 224, 224, 3] float "input" and a [N, labels] softmax "output", but only a single convolution so that a run
+ * measures the processor's overhead around TensorFlow rather than the model itself. It is generated rather than
+ * checked in as a binary so that it always matches the TensorFlow version the processors are built against.
+ */
+final class BenchmarkModel {
+
+    static final String FEED_NODE = "input";
+    static final String OUTPUT_NODE = "output";
+    static final int HEIGHT = 224;
+    static final int WIDTH = 224;
+    static final int LABELS = 10;
+
+    private static final int FILTERS = 16;
+
+    private BenchmarkModel() {
+    }
+
+    /**
+     * @return
+     *  Serialized GraphDef of the benchmark model.
+     */
+    static byte[] graphDef() {
+        final Random random = new Random(42);
+        try (Graph g = new Graph()) {
+            final Output input = g.opBuilder("Placeholder", FEED_NODE).setAttr("dtype", DataType.FLOAT).build().output(0);
+            final Output conv = g.opBuilder("Conv2D", "conv")
+                    .addInput(input)
+                    .addInput(constant(g, "filter", randomWeights(random, 3, 3, 3, FILTERS)))
+                    .setAttr("strides", new long[] {1, 2, 2, 1})
+                    .setAttr("padding", "SAME")
+                    .build()
+                    .output(0);
+            final Output relu = g.opBuilder("Relu", "relu").addInput(conv).build().output(0);
+            final Output pooled = g.opBuilder("Mean", "pool")
+                    .addInput(relu)
+                    .addInput(constant(g, "pool_axes", new int[] {1, 2}))
+                    .build()
+                    .output(0);
+            final Output logits = g.opBuilder("MatMul", "logits")
+                    .addInput(pooled)
+                    .addInput(constant(g, "weights", randomWeights(random, FILTERS, LABELS)))
+                    .build()
+                    .output(0);
+            g.opBuilder("Softmax", OUTPUT_NODE).addInput(logits).build();
+            return g.toGraphDef();
+        }
+    }
+
+    /**
+     * Writes the model and a matching labels file to the directory.
+     *
+     * @return
+     *  The graph file and the labels file, in that order.
+     */
+    static Path[] write(Path directory) throws IOException {
+        final Path graph = Files.write(directory.resolve("benchmark_graph.pb"), graphDef());
+        final List<String> labels = new ArrayList<>(LABELS);
+        for (int i = 0; i < LABELS; i++) {
+            labels.add("label" + i);
+        }
+        final Path labelsFile = Files.write(directory.resolve("benchmark_labels.txt"), labels, Charset.forName("UTF-8"));
+        return new Path[] {graph, labelsFile};
+    }
+
+    /**
+     * Encodes a noisy gradient, which compresses about as well as a photograph does.
+     *
+     * @param format
+     *  ImageIO format name such as "jpg" or "png".
+     */
+    static byte[] syntheticImage(int width, int height, String format, long seed) throws IOException {
+        final Random random = new Random(seed);
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int r = (x * 255 / width + random.nextInt(32)) & 0xFF;
+                final int g = (y * 255 / height + random.nextInt(32)) & 0xFF;
+                final int b = random.nextInt(256);
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, format, out)) {
+            throw new IOException("No ImageIO writer for " + format);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return
+     *  A [batchSize, 224, 224, 3] Tensor of random pixel values already normalized for the model.
+     */
+    static Tensor randomInput(int batchSize, long seed) {
+        final Random random = new Random(seed);
+        final float[][][][] pixels = new float[batchSize][HEIGHT][WIDTH][3];
+        for (float[][][] image : pixels) {
+            for (float[][] row : image) {
+                for (float[] pixel : row) {
+                    for (int c = 0; c < pixel.length; c++) {
+                        pixel[c] = random.nextFloat() * 2f - 1f;
+                    }
+                }
+            }
+        }
+        return Tensor.create(pixels);
+    }
+
+    private static Output constant(Graph g, String name, Object value) {
+        try (Tensor t = Tensor.create(value)) {
+            return g.opBuilder("Const", name)
+                    .setAttr("dtype", t.dataType())
+                    .setAttr("value", t)
+                    .build()
+                    .output(0);
+        }
+    }
+
+    private static float[][] randomWeights(Random random, int rows, int columns) {
+        final float[][] weights = new float[rows][columns];
+        for (float[] row : weights) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] = (float) random.nextGaussian() * 0.1f;
+            }
+        }
+        return weights;
+    }
+
+    private static float[][][][] randomWeights(Random random, int height, int width, int in, int out) {
+        final float[][][][] weights = new float[height][width][][];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                weights[y][x] = randomWeights(random, in, out);
+            }
+        }
+        return weights;
+    }
+}
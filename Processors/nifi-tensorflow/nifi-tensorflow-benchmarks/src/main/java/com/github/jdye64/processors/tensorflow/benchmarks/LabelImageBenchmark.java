@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdye64.processors.tensorflow.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tensorflow.Graph;
+import org.tensorflow.Tensor;
+
+import com.github.jdye64.processors.tensorflow.ImageNormalizer;
+import com.github.jdye64.processors.tensorflow.JavaImagePreprocessor;
+import com.github.jdye64.processors.tensorflow.TensorFlowModel;
+
+/**
+ * Benchmarks the stages LabelImageProcessor runs for every image: preprocessing with either engine, inference one
+ * image at a time and in batches, and the graph import paid whenever the model is loaded.
+ *
+ * Scores are the average time per image. Run the shaded jar with the GC profiler to also get the bytes allocated per
+ * image (gc.alloc.rate.norm), which covers the Java heap only, not TensorFlow's native buffers. The module is only
+ * built with the benchmarks profile:
+ *
+ * <pre>
+ * mvn package -Pbenchmarks
+ * java -jar target/benchmarks.jar LabelImageBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LabelImageBenchmark {
+
+    static final int BATCH_SIZE = 16;
+
+    private Path modelDirectory;
+    private byte[] graphDef;
+    private byte[] jpeg;
+    private TensorFlowModel model;
+    private ImageNormalizer tensorFlowPreprocessor;
+    private JavaImagePreprocessor javaPreprocessor;
+    private Tensor singleInput;
+    private Tensor batchInput;
+
+    @Setup
+    public void setUp() throws IOException {
+        modelDirectory = Files.createTempDirectory("nifi-tensorflow-benchmarks");
+        final Path[] files = BenchmarkModel.write(modelDirectory);
+        graphDef = Files.readAllBytes(files[0]);
+        model = TensorFlowModel.load(files[0], files[1], null);
+
+        jpeg = BenchmarkModel.syntheticImage(640, 480, "jpg", 1);
+        tensorFlowPreprocessor = ImageNormalizer.forInception(null);
+        javaPreprocessor = JavaImagePreprocessor.forInception();
+
+        singleInput = BenchmarkModel.randomInput(1, 2);
+        batchInput = BenchmarkModel.randomInput(BATCH_SIZE, 3);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        singleInput.close();
+        batchInput.close();
+        javaPreprocessor.close();
+        tensorFlowPreprocessor.close();
+        model.close();
+        FileUtils.deleteDirectory(modelDirectory.toFile());
+    }
+
+    @Benchmark
+    public long[] preprocessJava() throws IOException {
+        try (Tensor image = javaPreprocessor.preprocess(new ByteArrayInputStream(jpeg))) {
+            return image.shape();
+        }
+    }
+
+    @Benchmark
+    public long[] preprocessTensorFlow() throws IOException {
+        try (Tensor image = tensorFlowPreprocessor.preprocess(new ByteArrayInputStream(jpeg))) {
+            return image.shape();
+        }
+    }
+
+    @Benchmark
+    public Graph importGraph() {
+        final Graph graph = new Graph();
+        try {
+            graph.importGraphDef(graphDef);
+            return graph;
+        } finally {
+            graph.close();
+        }
+    }
+
+    @Benchmark
+    public float[][] inferSingle() {
+        return infer(singleInput, 1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public float[][] inferBatch() {
+        return infer(batchInput, BATCH_SIZE);
+    }
+
+    /**
+     * Runs the input through the model and copies the result out the way LabelImageProcessor does.
+     */
+    private float[][] infer(Tensor input, int batchSize) {
+        final List<Tensor> outputs = model.getSession().runner()
+                .feed(BenchmarkModel.FEED_NODE, input)
+                .fetch(BenchmarkModel.OUTPUT_NODE)
+                .run();
+        try {
+            return outputs.get(0).copyTo(new float[batchSize][BenchmarkModel.LABELS]);
+        } finally {
+            for (Tensor output : outputs) {
+                output.close();
+            }
+        }
+    }
+}
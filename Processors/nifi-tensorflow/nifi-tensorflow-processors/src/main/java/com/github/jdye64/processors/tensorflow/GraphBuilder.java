@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdye64.processors.tensorflow;
+
+import org.tensorflow.DataType;
+import org.tensorflow.Graph;
+import org.tensorflow.Output;
+import org.tensorflow.Tensor;
+
+// In the fullness of time, equivalents of the methods of this class should be auto-generated from
+// the OpDefs linked into libtensorflow_jni.so. That would match what is done in other languages
+// like Python, C++ and Go.
+class GraphBuilder {
+    GraphBuilder(Graph g) {
+        this.g = g;
+    }
+
+    Output div(Output x, Output y) {
+        return binaryOp("Div", x, y);
+    }
+
+    Output sub(Output x, Output y) {
+        return binaryOp("Sub", x, y);
+    }
+
+    Output resizeBilinear(Output images, Output size) {
+        return binaryOp("ResizeBilinear", images, size);
+    }
+
+    Output expandDims(Output input, Output dim) {
+        return binaryOp("ExpandDims", input, dim);
+    }
+
+    Output reverse(Output tensor, Output axis) {
+        return binaryOp("ReverseV2", tensor, axis);
+    }
+
+    Output cast(Output value, DataType dtype) {
+        return g.opBuilder("Cast", "Cast").addInput(value).setAttr("DstT", dtype).build().output(0);
+    }
+
+    Output decodeJpeg(Output contents, long channels) {
+        return g.opBuilder("DecodeJpeg", "DecodeJpeg")
+                .addInput(contents)
+                .setAttr("channels", channels)
+                .build()
+                .output(0);
+    }
+
+    Output placeholder(String name, DataType dtype) {
+        return g.opBuilder("Placeholder", name).setAttr("dtype", dtype).build().output(0);
+    }
+
+    Output constant(String name, Object value) {
+        try (Tensor t = Tensor.create(value)) {
+            return g.opBuilder("Const", name)
+                    .setAttr("dtype", t.dataType())
+                    .setAttr("value", t)
+                    .build()
+                    .output(0);
+        }
+    }
+
+    private Output binaryOp(String type, Output in1, Output in2) {
+        return g.opBuilder(type, type).addInput(in1).addInput(in2).build().output(0);
+    }
+
+    private Graph g;
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdye64.processors.tensorflow;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.tensorflow.DataType;
+import org.tensorflow.Graph;
+import org.tensorflow.Output;
+import org.tensorflow.Session;
+import org.tensorflow.Tensor;
+
+/**
+ * Decodes JPEG bytes and translates the image to similar dimensions to those that the model was trained on.
+ * The preprocessing graph is compiled once with a placeholder for the image bytes and executed through a
+ * long lived Session, so only the input and output tensors are allocated per image. Only JPEG images
+ * are supported.
+ */
+public class ImageNormalizer implements ImagePreprocessor {
+
+    private static final String INPUT_NAME = "input";
+
+    private final Graph graph;
+    private final Session session;
+    private final Output input;
+    private final Output output;
+    private final long[] outputShape;
+
+    /**
+     * @param height
+     *  Height in pixels that images will be resized to.
+     * @param width
+     *  Width in pixels that images will be resized to.
+     * @param mean
+     *  Value subtracted from each R, G, B channel value.
+     * @param scale
+     *  Value each channel is divided by after the mean has been subtracted.
+     * @param sessionConfig
+     *  Serialized ConfigProto for the preprocessing Session or null to use TensorFlow's defaults.
+     */
+    public ImageNormalizer(int height, int width, float mean, float scale, byte[] sessionConfig) {
+        this(height, width, mean, scale, false, sessionConfig);
+    }
+
+    /**
+     * @param height
+     *  Height in pixels that images will be resized to.
+     * @param width
+     *  Width in pixels that images will be resized to.
+     * @param mean
+     *  Value subtracted from each R, G, B channel value.
+     * @param scale
+     *  Value each channel is divided by after the mean has been subtracted.
+     * @param bgr
+     *  Output the channels in B, G, R order instead of R, G, B.
+     * @param sessionConfig
+     *  Serialized ConfigProto for the preprocessing Session or null to use TensorFlow's defaults.
+     */
+    public ImageNormalizer(int height, int width, float mean, float scale, boolean bgr, byte[] sessionConfig) {
+        this.outputShape = new long[] {1, height, width, 3};
+        this.graph = new Graph();
+        try {
+            GraphBuilder b = new GraphBuilder(graph);
+            this.input = b.placeholder(INPUT_NAME, DataType.STRING);
+            Output decoded = b.cast(b.decodeJpeg(input, 3), DataType.FLOAT);
+            if (bgr) {
+                decoded = b.reverse(decoded, b.constant("channel_axis", new int[] {2}));
+            }
+            this.output =
+                    b.div(
+                            b.sub(
+                                    b.resizeBilinear(
+                                            b.expandDims(
+                                                    decoded,
+                                                    b.constant("make_batch", 0)),
+                                            b.constant("size", new int[] {height, width})),
+                                    b.constant("mean", mean)),
+                            b.constant("scale", scale));
+            this.session = sessionConfig == null ? new Session(graph) : new Session(graph, sessionConfig);
+        } catch (RuntimeException e) {
+            graph.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Some constants specific to the pre-trained model at:
+     * https://storage.googleapis.com/download.tensorflow.org/models/inception5h.zip
+     *
+     * - The model was trained with images scaled to 224x224 pixels.
+     * - The colors, represented as R, G, B in 1-byte each were converted to
+     *   float using (value - Mean)/Scale.
+     */
+    public static ImageNormalizer forInception(byte[] sessionConfig) {
+        return new ImageNormalizer(224, 224, 117f, 1f, sessionConfig);
+    }
+
+    /**
+     * Runs the image bytes through the preprocessing graph.
+     *
+     * @param imageBytes
+     *  Encoded JPEG image.
+     *
+     * @return
+     *  [1, height, width, 3] shaped FLOAT Tensor. The caller is responsible for closing it.
+     */
+    public Tensor normalize(byte[] imageBytes) {
+        try (Tensor image = Tensor.create(imageBytes)) {
+            return session.runner().feed(input, image).fetch(output).run().get(0);
+        }
+    }
+
+    @Override
+    public Tensor preprocess(InputStream in) throws IOException {
+        return normalize(IOUtils.toByteArray(in));
+    }
+
+    @Override
+    public long[] getOutputShape() {
+        return outputShape.clone();
+    }
+
+    @Override
+    public void close() {
+        session.close();
+        graph.close();
+    }
+}
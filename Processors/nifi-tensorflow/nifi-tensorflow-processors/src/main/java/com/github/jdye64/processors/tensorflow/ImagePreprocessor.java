@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdye64.processors.tensorflow;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.tensorflow.Tensor;
+
+/**
+ * Turns encoded image bytes into the normalized FLOAT Tensor a model is fed with. Implementations are safe for
+ * concurrent use and must be closed once no longer needed.
+ */
+public interface ImagePreprocessor extends AutoCloseable {
+
+    /**
+     * Decodes, resizes and normalizes the image.
+     *
+     * @param in
+     *  Encoded image. The stream is not closed.
+     *
+     * @return
+     *  Tensor with the shape returned by {@link #getOutputShape()}. The caller is responsible for closing it.
+     *
+     * @throws IOException
+     *  If the image can not be read or decoded.
+     */
+    Tensor preprocess(InputStream in) throws IOException;
+
+    /**
+     * @return
+     *  Shape of the Tensors returned by {@link #preprocess(InputStream)}, including the batch dimension of 1.
+     */
+    long[] getOutputShape();
+
+    @Override
+    void close();
+}
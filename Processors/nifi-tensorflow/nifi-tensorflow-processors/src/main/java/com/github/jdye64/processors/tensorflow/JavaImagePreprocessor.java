@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdye64.processors.tensorflow;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.spi.IIORegistry;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.ImageInputStream;
+
+import org.tensorflow.Tensor;
+
+/**
+ * Decodes images with the JDK's ImageIO readers and bilinearly resizes them straight into a direct FloatBuffer
+ * that becomes the input Tensor. Any format ImageIO can read is supported, e.g. JPEG, PNG, BMP and GIF.
+ * <p>
+ * ImageReaders and the direct FloatBuffers are pooled and reused across images, and only two rows of the decoded
+ * image are converted to RGB at a time, so the per image allocations are limited to the decoded image itself.
+ * The resize matches TensorFlow's ResizeBilinear op with align_corners=false.
+ */
+public class JavaImagePreprocessor implements ImagePreprocessor {
+
+    private final int height;
+    private final int width;
+    private final float mean;
+    private final float scale;
+    private final int[] channelShifts;
+    private final long[] outputShape;
+
+    private final List<ImageReaderSpi> readerSpis = new ArrayList<>();
+    private final ConcurrentHashMap<ImageReaderSpi, Queue<ImageReader>> readers = new ConcurrentHashMap<>();
+    private final Queue<FloatBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param height
+     *  Height in pixels that images will be resized to.
+     * @param width
+     *  Width in pixels that images will be resized to.
+     * @param mean
+     *  Value subtracted from each R, G, B channel value.
+     * @param scale
+     *  Value each channel is divided by after the mean has been subtracted.
+     */
+    public JavaImagePreprocessor(int height, int width, float mean, float scale) {
+        this(height, width, mean, scale, false);
+    }
+
+    /**
+     * @param height
+     *  Height in pixels that images will be resized to.
+     * @param width
+     *  Width in pixels that images will be resized to.
+     * @param mean
+     *  Value subtracted from each R, G, B channel value.
+     * @param scale
+     *  Value each channel is divided by after the mean has been subtracted.
+     * @param bgr
+     *  Write the channels in B, G, R order instead of R, G, B.
+     */
+    public JavaImagePreprocessor(int height, int width, float mean, float scale, boolean bgr) {
+        this.height = height;
+        this.width = width;
+        this.mean = mean;
+        this.scale = scale;
+        this.channelShifts = bgr ? new int[] {0, 8, 16} : new int[] {16, 8, 0};
+        this.outputShape = new long[] {1, height, width, 3};
+
+        final Iterator<ImageReaderSpi> spis = IIORegistry.getDefaultInstance().getServiceProviders(ImageReaderSpi.class, true);
+        while (spis.hasNext()) {
+            readerSpis.add(spis.next());
+        }
+    }
+
+    /**
+     * Same constants as {@link ImageNormalizer#forInception(byte[])}.
+     */
+    public static JavaImagePreprocessor forInception() {
+        return new JavaImagePreprocessor(224, 224, 117f, 1f);
+    }
+
+    @Override
+    public Tensor preprocess(InputStream in) throws IOException {
+        final BufferedImage image = decode(in);
+
+        FloatBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(height * width * 3 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+        try {
+            buffer.clear();
+            resize(image, buffer);
+            buffer.flip();
+            // Tensor.create copies the buffer contents so it can be reused right away
+            return Tensor.create(outputShape, buffer);
+        } finally {
+            buffers.offer(buffer);
+        }
+    }
+
+    @Override
+    public long[] getOutputShape() {
+        return outputShape.clone();
+    }
+
+    @Override
+    public void close() {
+        for (Queue<ImageReader> queue : readers.values()) {
+            ImageReader reader;
+            while ((reader = queue.poll()) != null) {
+                reader.dispose();
+            }
+        }
+        buffers.clear();
+    }
+
+    private BufferedImage decode(InputStream in) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(in)) {
+            if (iis == null) {
+                throw new IOException("Unable to create an ImageInputStream for the image");
+            }
+
+            for (ImageReaderSpi spi : readerSpis) {
+                if (!spi.canDecodeInput(iis)) {
+                    continue;
+                }
+
+                Queue<ImageReader> queue = readers.get(spi);
+                if (queue == null) {
+                    readers.putIfAbsent(spi, new ConcurrentLinkedQueue<ImageReader>());
+                    queue = readers.get(spi);
+                }
+                ImageReader reader = queue.poll();
+                if (reader == null) {
+                    reader = spi.createReaderInstance();
+                }
+                try {
+                    reader.setInput(iis, true, true);
+                    return reader.read(0);
+                } finally {
+                    reader.reset();
+                    queue.offer(reader);
+                }
+            }
+        }
+        throw new IOException("No ImageIO reader is available for the image format");
+    }
+
+    /**
+     * Bilinearly resizes the image to height x width and writes the normalized channel values in row major order.
+     */
+    private void resize(BufferedImage image, FloatBuffer out) {
+        final int srcWidth = image.getWidth();
+        final int srcHeight = image.getHeight();
+        final float yScale = (float) srcHeight / height;
+        final float xScale = (float) srcWidth / width;
+
+        // Horizontal sample positions are the same for every row so compute them once
+        final int[] x0 = new int[width];
+        final int[] x1 = new int[width];
+        final float[] xLerp = new float[width];
+        for (int x = 0; x < width; x++) {
+            final float in = x * xScale;
+            x0[x] = (int) in;
+            x1[x] = Math.min(x0[x] + 1, srcWidth - 1);
+            xLerp[x] = in - x0[x];
+        }
+
+        int[] top = new int[srcWidth];
+        int[] bottom = new int[srcWidth];
+        int topRow = -1;
+        int bottomRow = -1;
+        for (int y = 0; y < height; y++) {
+            final float in = y * yScale;
+            final int y0 = (int) in;
+            final int y1 = Math.min(y0 + 1, srcHeight - 1);
+            final float yLerp = in - y0;
+
+            // Rows are visited in increasing order so the previous bottom row is often the new top row
+            if (topRow != y0) {
+                if (bottomRow == y0) {
+                    final int[] tmp = top;
+                    top = bottom;
+                    bottom = tmp;
+                    bottomRow = -1;
+                } else {
+                    image.getRGB(0, y0, srcWidth, 1, top, 0, srcWidth);
+                }
+                topRow = y0;
+            }
+            if (bottomRow != y1) {
+                image.getRGB(0, y1, srcWidth, 1, bottom, 0, srcWidth);
+                bottomRow = y1;
+            }
+
+            for (int x = 0; x < width; x++) {
+                final int tl = top[x0[x]];
+                final int tr = top[x1[x]];
+                final int bl = bottom[x0[x]];
+                final int br = bottom[x1[x]];
+                for (int shift : channelShifts) {
+                    final float t = channel(tl, shift) + (channel(tr, shift) - channel(tl, shift)) * xLerp[x];
+                    final float b = channel(bl, shift) + (channel(br, shift) - channel(bl, shift)) * xLerp[x];
+                    out.put((t + (b - t) * yLerp - mean) / scale);
+                }
+            }
+        }
+    }
+
+    private static int channel(int argb, int shift) {
+        return (argb >> shift) & 0xff;
+    }
+}
@@ -16,43 +16,65 @@
  */
 package com.github.jdye64.processors.tensorflow;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
-import org.apache.commons.io.IOUtils;
+import javax.imageio.ImageIO;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.nifi.annotation.behavior.InputRequirement;
 import org.apache.nifi.annotation.behavior.WritesAttribute;
 import org.apache.nifi.annotation.behavior.WritesAttributes;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.Tags;
 import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.annotation.lifecycle.OnStopped;
 import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.ValidationContext;
+import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.context.PropertyContext;
+import org.apache.nifi.distributed.cache.client.DistributedMapCacheClient;
 import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.flowfile.attributes.CoreAttributes;
-import org.apache.nifi.processor.AbstractProcessor;
+import org.apache.nifi.processor.AbstractSessionFactoryProcessor;
 import org.apache.nifi.processor.ProcessContext;
 import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.ProcessSessionFactory;
 import org.apache.nifi.processor.ProcessorInitializationContext;
 import org.apache.nifi.processor.Relationship;
 import org.apache.nifi.processor.exception.ProcessException;
 import org.apache.nifi.processor.io.InputStreamCallback;
 import org.apache.nifi.processor.util.StandardValidators;
-import org.tensorflow.DataType;
-import org.tensorflow.Graph;
-import org.tensorflow.Output;
 import org.tensorflow.Session;
 import org.tensorflow.Tensor;
+import org.tensorflow.framework.ConfigProto;
+import org.tensorflow.framework.GPUOptions;
 
 @Tags({"tensorflow", "label", "image"})
 @CapabilityDescription("Labels incoming images using Tensorflow")
@@ -60,15 +82,42 @@ import org.tensorflow.Tensor;
 @WritesAttributes(
         {
                 @WritesAttribute(attribute="label.name", description = "Name of the label that was detected"),
-                @WritesAttribute(attribute="label.score", description = "Float value score for the label that was detected")
+                @WritesAttribute(attribute="label.score", description = "Float value score for the label that was detected"),
+                @WritesAttribute(attribute="label.count", description = "Number of labels, at most 'Top K Labels', that scored at or above the 'Score Threshold'"),
+                @WritesAttribute(attribute="label.N.name", description = "Name of the Nth best label, starting at 1, when 'Label Output Format' is 'attributes'"),
+                @WritesAttribute(attribute="label.N.score", description = "Float value score of the Nth best label, starting at 1, when 'Label Output Format' is 'attributes'"),
+                @WritesAttribute(attribute="label.json", description = "JSON array of {\"name\", \"score\"} records for the best labels when 'Label Output Format' is 'json'"),
+                @WritesAttribute(attribute="label.read.nanos", description = "Nanoseconds spent reading the FlowFile's content"),
+                @WritesAttribute(attribute="label.preprocess.nanos", description = "Nanoseconds spent decoding and normalizing the image"),
+                @WritesAttribute(attribute="label.inference.nanos", description = "Nanoseconds spent running the batch that held the image through the model"),
+                @WritesAttribute(attribute="label.batch.size", description = "Number of images in the batch that was run through the model")
         }
 )
 public class LabelImageProcessor
-        extends AbstractProcessor {
+        extends AbstractSessionFactoryProcessor {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final int WARM_UP_IMAGE_SIZE = 256;
 
     // Tensorflow
-    private byte[] graphDef = null;             // TensorFlow frozen graph file bytes. AKA .pb file
-    private List<String> labels = null;         // TensorFlow labels loaded from correlated .txt file for .pb file.
+    private final AtomicReference<TensorFlowModel> model = new AtomicReference<>(); // Imported graph, session and labels shared by all triggers.
+    private volatile ImagePreprocessor preprocessor = null;     // Image decode/resize/normalize engine shared by all triggers.
+    private volatile String feedNodeName = null;
+    private volatile String outputNodeName = null;
+    private volatile int batchSize = 1;
+    private volatile int warmUpIterations = 0;
+    private volatile TensorFlowModelRegistry modelRegistry = null; // Shares the model with other processors, null when this processor loads its own.
+    private volatile ScheduledExecutorService modelWatcher = null; // Checks the model files for modifications when reloading is enabled.
+    private volatile LabelResultCache resultCache = null;       // Labels of previously seen images, null when caching is disabled.
+    private volatile InferencePipeline pipeline = null;         // Dedicated inference thread, null when inference runs on NiFi's threads.
+
+    // Latency of each stage since the last report, logged every reporting interval and when the processor stops
+    private final StageTimer readTimer = new StageTimer("content read");
+    private final StageTimer preprocessTimer = new StageTimer("decode/normalize");
+    private final StageTimer inferenceTimer = new StageTimer("inference");
+    private final StageTimer attributesTimer = new StageTimer("attribute write");
+    private final AtomicLong nextLatencyReport = new AtomicLong();
+    private volatile long latencyReportNanos = 0;               // 0 when latencies are only logged on stop.
 
 
     public static final PropertyDescriptor TF_FROZEN_GRAPH = new PropertyDescriptor
@@ -109,6 +158,208 @@ public class LabelImageProcessor
             .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
             .build();
 
+    public static final PropertyDescriptor TF_BATCH_SIZE = new PropertyDescriptor
+            .Builder().name("tensorflow-batch-size")
+            .displayName("Batch Size")
+            .description("Maximum number of FlowFiles that will be pulled from the queue in a single trigger and labeled with a single"
+                    + " run of the TensorFlow graph. Values greater than 1 require a model whose input/feed node accepts a variable"
+                    + " batch dimension. If fewer FlowFiles are queued, the batch will contain only the FlowFiles that are available.")
+            .defaultValue("1")
+            .required(true)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor TF_INTRA_OP_THREADS = new PropertyDescriptor
+            .Builder().name("tensorflow-intra-op-parallelism")
+            .displayName("Intra-op Parallelism Threads")
+            .description("Number of threads TensorFlow uses to parallelize the execution of a single operation, such as a matrix"
+                    + " multiplication. 0 lets TensorFlow pick a value, which is usually the number of cores. When running several"
+                    + " concurrent tasks consider setting this to roughly the number of cores divided by the number of concurrent tasks.")
+            .defaultValue("0")
+            .required(true)
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor TF_INTER_OP_THREADS = new PropertyDescriptor
+            .Builder().name("tensorflow-inter-op-parallelism")
+            .displayName("Inter-op Parallelism Threads")
+            .description("Number of threads TensorFlow uses to execute independent operations of the graph concurrently."
+                    + " 0 lets TensorFlow pick a value, which is usually the number of cores.")
+            .defaultValue("0")
+            .required(true)
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor TF_USE_PER_SESSION_THREADS = new PropertyDescriptor
+            .Builder().name("tensorflow-use-per-session-threads")
+            .displayName("Use Per Session Threads")
+            .description("If true the session gets its own inter-op thread pool instead of sharing the process wide pool"
+                    + " with every other TensorFlow session in this NiFi instance.")
+            .defaultValue("false")
+            .allowableValues("true", "false")
+            .required(true)
+            .build();
+
+    public static final PropertyDescriptor TF_ALLOW_SOFT_PLACEMENT = new PropertyDescriptor
+            .Builder().name("tensorflow-allow-soft-placement")
+            .displayName("Allow Soft Placement")
+            .description("If true TensorFlow will place an operation on the CPU when the device it was assigned to in the graph is not available.")
+            .defaultValue("true")
+            .allowableValues("true", "false")
+            .required(true)
+            .build();
+
+    public static final PropertyDescriptor TF_LOG_DEVICE_PLACEMENT = new PropertyDescriptor
+            .Builder().name("tensorflow-log-device-placement")
+            .displayName("Log Device Placement")
+            .description("If true TensorFlow logs the device each operation is placed on to standard error.")
+            .defaultValue("false")
+            .allowableValues("true", "false")
+            .required(true)
+            .build();
+
+    public static final PropertyDescriptor TF_GPU_ALLOW_GROWTH = new PropertyDescriptor
+            .Builder().name("tensorflow-gpu-allow-growth")
+            .displayName("GPU Allow Growth")
+            .description("If true GPU memory is allocated as needed instead of reserving most of the GPU memory up front."
+                    + " Has no effect when no GPU is available.")
+            .defaultValue("false")
+            .allowableValues("true", "false")
+            .required(true)
+            .build();
+
+    public static final PropertyDescriptor TF_GPU_MEMORY_FRACTION = new PropertyDescriptor
+            .Builder().name("tensorflow-gpu-memory-fraction")
+            .displayName("GPU Memory Fraction")
+            .description("Fraction, between 0 and 1, of the available GPU memory the session is allowed to allocate."
+                    + " If not set TensorFlow's default is used. Has no effect when no GPU is available.")
+            .required(false)
+            .addValidator(StandardValidators.NUMBER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor TF_TOP_K = new PropertyDescriptor
+            .Builder().name("tensorflow-top-k")
+            .displayName("Top K Labels")
+            .description("Maximum number of labels, ordered by score, that will be written to the FlowFile. The single best label is"
+                    + " always written to 'label.name' and 'label.score' regardless of this value.")
+            .defaultValue("1")
+            .required(true)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor TF_SCORE_THRESHOLD = new PropertyDescriptor
+            .Builder().name("tensorflow-score-threshold")
+            .displayName("Score Threshold")
+            .description("Minimum score, as a percentage between 0 and 100 like 'label.score', a label must have to be included in the top K labels.")
+            .defaultValue("0")
+            .required(true)
+            .addValidator(StandardValidators.NUMBER_VALIDATOR)
+            .build();
+
+    public static final String LABEL_OUTPUT_ATTRIBUTES = "attributes";
+    public static final String LABEL_OUTPUT_JSON = "json";
+
+    public static final PropertyDescriptor TF_LABEL_OUTPUT_FORMAT = new PropertyDescriptor
+            .Builder().name("tensorflow-label-output-format")
+            .displayName("Label Output Format")
+            .description("How the top K labels are written. 'attributes' writes 'label.N.name' and 'label.N.score' attributes, starting at 1."
+                    + " 'json' writes a JSON array of {\"name\", \"score\"} records to the 'label.json' attribute.")
+            .defaultValue(LABEL_OUTPUT_ATTRIBUTES)
+            .allowableValues(LABEL_OUTPUT_ATTRIBUTES, LABEL_OUTPUT_JSON)
+            .required(true)
+            .build();
+
+    public static final PropertyDescriptor TF_MODEL_RELOAD_INTERVAL = new PropertyDescriptor
+            .Builder().name("tensorflow-model-reload-interval")
+            .displayName("Model Reload Interval")
+            .description("How often the TensorFlow pb file and labels file are checked for modifications while the processor is running."
+                    + " When either file has changed the new model is loaded and warmed up in the background and then swapped in."
+                    + " FlowFiles that are already being labeled finish with the previous model. A value of 0 sec disables reloading.")
+            .defaultValue("0 sec")
+            .required(true)
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor TF_LATENCY_REPORT_INTERVAL = new PropertyDescriptor
+            .Builder().name("tensorflow-latency-report-interval")
+            .displayName("Latency Report Interval")
+            .description("How often the count, mean, 50th and 99th percentile and maximum latency of each stage (content read,"
+                    + " decode/normalize, inference and attribute write) since the previous report are logged at INFO level while"
+                    + " the processor is running. They show as bulletins when the processor's Bulletin Level is INFO. The latencies"
+                    + " since the last report are also logged when the processor stops. A value of 0 sec only logs them on stop.")
+            .defaultValue("5 min")
+            .required(true)
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor TF_WARM_UP_ITERATIONS = new PropertyDescriptor
+            .Builder().name("tensorflow-warm-up-iterations")
+            .displayName("Warm-up Iterations")
+            .description("Number of synthetic images run through the preprocessing engine and the model, at both a single image and"
+                    + " the full 'Batch Size', when the processor is started. TensorFlow initializes kernels and allocates memory lazily,"
+                    + " so warming up moves that cost to start up instead of the first FlowFiles. The processor does not accept"
+                    + " FlowFiles until warm-up has finished. A value of 0 disables warm-up.")
+            .defaultValue("3")
+            .required(true)
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final String PREPROCESSING_ENGINE_TENSORFLOW = "tensorflow";
+    public static final String PREPROCESSING_ENGINE_JAVA = "java";
+
+    public static final PropertyDescriptor TF_PREPROCESSING_ENGINE = new PropertyDescriptor
+            .Builder().name("tensorflow-preprocessing-engine")
+            .displayName("Image Preprocessing Engine")
+            .description("How images are decoded and resized before being fed to the model. 'tensorflow' uses TensorFlow's DecodeJpeg and"
+                    + " ResizeBilinear ops and only supports JPEG images. 'java' decodes with the JDK's ImageIO readers, supporting JPEG,"
+                    + " PNG, BMP and GIF images, and resizes directly into reusable direct buffers.")
+            .defaultValue(PREPROCESSING_ENGINE_TENSORFLOW)
+            .allowableValues(PREPROCESSING_ENGINE_TENSORFLOW, PREPROCESSING_ENGINE_JAVA)
+            .required(true)
+            .build();
+
+    public static final PropertyDescriptor TF_RESULT_CACHE_SIZE = new PropertyDescriptor
+            .Builder().name("tensorflow-result-cache-size")
+            .displayName("Result Cache Size")
+            .description("Maximum number of images whose labels are kept in memory, keyed by a SHA-256 hash of the FlowFile content"
+                    + " the model version, its labels and the feed/output nodes. FlowFiles with byte identical content are then labeled without running TensorFlow."
+                    + " 0 disables the in-memory cache.")
+            .defaultValue("0")
+            .required(true)
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor TF_MODEL_REGISTRY = new PropertyDescriptor
+            .Builder().name("tensorflow-model-registry")
+            .displayName("Model Registry")
+            .description("Optional Controller Service that imports each model once and shares it with every processor that uses the"
+                    + " same files, instead of each processor importing a copy of its own. When set, the Session is configured by the"
+                    + " service and this processor's TensorFlow session properties are ignored.")
+            .required(false)
+            .identifiesControllerService(TensorFlowModelRegistry.class)
+            .build();
+
+    public static final PropertyDescriptor TF_DISTRIBUTED_CACHE_SERVICE = new PropertyDescriptor
+            .Builder().name("tensorflow-distributed-cache-service")
+            .displayName("Distributed Cache Service")
+            .description("Optional Controller Service used to share cached labels across processors and NiFi nodes. It is consulted"
+                    + " when the in-memory cache misses.")
+            .required(false)
+            .identifiesControllerService(DistributedMapCacheClient.class)
+            .build();
+
+    public static final PropertyDescriptor TF_INFERENCE_QUEUE_SIZE = new PropertyDescriptor
+            .Builder().name("tensorflow-inference-queue-size")
+            .displayName("Inference Queue Size")
+            .description("When greater than 0, NiFi's threads only read and preprocess images and hand the batches to a dedicated"
+                    + " inference thread through a queue of this many batches. The inference thread labels the FlowFiles and commits"
+                    + " them, so reading content overlaps with inference. While the queue is full the processor yields and leaves"
+                    + " FlowFiles in the incoming connection. When 0, inference runs on NiFi's threads.")
+            .defaultValue("0")
+            .required(true)
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .build();
+
     public static final Relationship REL_SUCCESS = new Relationship.Builder().name("success")
             .description("successfully labeled image").build();
 
@@ -126,6 +377,25 @@ public class LabelImageProcessor
         descriptors.add(TF_LABELS_FILE);
         descriptors.add(TF_FEED_NODE);
         descriptors.add(TF_OUTPUT_NODE);
+        descriptors.add(TF_PREPROCESSING_ENGINE);
+        descriptors.add(TF_BATCH_SIZE);
+        descriptors.add(TF_INFERENCE_QUEUE_SIZE);
+        descriptors.add(TF_TOP_K);
+        descriptors.add(TF_SCORE_THRESHOLD);
+        descriptors.add(TF_LABEL_OUTPUT_FORMAT);
+        descriptors.add(TF_MODEL_REGISTRY);
+        descriptors.add(TF_MODEL_RELOAD_INTERVAL);
+        descriptors.add(TF_WARM_UP_ITERATIONS);
+        descriptors.add(TF_LATENCY_REPORT_INTERVAL);
+        descriptors.add(TF_RESULT_CACHE_SIZE);
+        descriptors.add(TF_DISTRIBUTED_CACHE_SERVICE);
+        descriptors.add(TF_INTRA_OP_THREADS);
+        descriptors.add(TF_INTER_OP_THREADS);
+        descriptors.add(TF_USE_PER_SESSION_THREADS);
+        descriptors.add(TF_ALLOW_SOFT_PLACEMENT);
+        descriptors.add(TF_LOG_DEVICE_PLACEMENT);
+        descriptors.add(TF_GPU_ALLOW_GROWTH);
+        descriptors.add(TF_GPU_MEMORY_FRACTION);
         this.descriptors = Collections.unmodifiableList(descriptors);
 
         final Set<Relationship> relationships = new HashSet<Relationship>();
@@ -144,77 +414,473 @@ public class LabelImageProcessor
         return descriptors;
     }
 
+    @Override
+    protected Collection<ValidationResult> customValidate(final ValidationContext validationContext) {
+        final List<ValidationResult> results = new ArrayList<>();
+        final double threshold = validationContext.getProperty(TF_SCORE_THRESHOLD).asDouble();
+        if (threshold < 0 || threshold > 100) {
+            results.add(new ValidationResult.Builder()
+                    .subject(TF_SCORE_THRESHOLD.getDisplayName())
+                    .input(String.valueOf(threshold))
+                    .explanation("must be between 0 and 100")
+                    .valid(false)
+                    .build());
+        }
+        validateSessionConfig(validationContext, results);
+        return results;
+    }
+
     @OnScheduled
     public void onScheduled(final ProcessContext context) {
-        this.graphDef = readAllBytes(Paths.get(context.getProperty(TF_FROZEN_GRAPH).evaluateAttributeExpressions().getValue()));
+        resetStageTimers();
+        this.latencyReportNanos = context.getProperty(TF_LATENCY_REPORT_INTERVAL).asTimePeriod(TimeUnit.NANOSECONDS);
+        nextLatencyReport.set(System.nanoTime() + latencyReportNanos);
+
+        final byte[] sessionConfig = buildSessionConfig(context);
+        this.preprocessor = PREPROCESSING_ENGINE_JAVA.equals(context.getProperty(TF_PREPROCESSING_ENGINE).getValue())
+                ? JavaImagePreprocessor.forInception()
+                : ImageNormalizer.forInception(sessionConfig);
+        this.feedNodeName = context.getProperty(TF_FEED_NODE).evaluateAttributeExpressions().getValue();
+        this.outputNodeName = context.getProperty(TF_OUTPUT_NODE).evaluateAttributeExpressions().getValue();
+        this.batchSize = context.getProperty(TF_BATCH_SIZE).asInteger();
+        this.warmUpIterations = context.getProperty(TF_WARM_UP_ITERATIONS).asInteger();
+
+        final Path graphPath = Paths.get(context.getProperty(TF_FROZEN_GRAPH).evaluateAttributeExpressions().getValue());
+        final Path labelsPath = Paths.get(context.getProperty(TF_LABELS_FILE).evaluateAttributeExpressions().getValue());
+        this.modelRegistry = context.getProperty(TF_MODEL_REGISTRY).asControllerService(TensorFlowModelRegistry.class);
+
+        // Importing the graph is far more expensive than a single inference so do it once here rather than per FlowFile
+        try {
+            model.set(loadModel(graphPath, labelsPath, sessionConfig));
+        } catch (IOException e) {
+            // Make sure the files were read otherwise invalidate this processor
+            getLogger().warn("TensorFlow pb file or labels file was not found or unable to read. This processor is invalid!", e);
+        } catch (IllegalArgumentException e) {
+            throw new ProcessException("Unable to import TensorFlow graph: " + e.getMessage(), e);
+        }
+
+        if (warmUpIterations > 0) {
+            // onTrigger is not called until this returns, so no FlowFile waits on TensorFlow's lazy initialization
+            final long preprocessNanos = warmUpPreprocessor(warmUpIterations);
+            final TensorFlowModel loaded = model.get();
+            try {
+                final long modelNanos = loaded == null ? 0 : warmUp(loaded, warmUpIterations);
+                getLogger().info("Warmed up in {} ms: preprocessing {} ms, model {} ms",
+                        new Object[] {TimeUnit.NANOSECONDS.toMillis(preprocessNanos + modelNanos),
+                                TimeUnit.NANOSECONDS.toMillis(preprocessNanos), TimeUnit.NANOSECONDS.toMillis(modelNanos)});
+            } catch (RuntimeException e) {
+                throw new ProcessException("TensorFlow model failed to warm up, check the '" + TF_FEED_NODE.getDisplayName()
+                        + "' and '" + TF_OUTPUT_NODE.getDisplayName() + "' properties: " + e.getMessage(), e);
+            }
+        }
+
+        final int cacheSize = context.getProperty(TF_RESULT_CACHE_SIZE).asInteger();
+        final DistributedMapCacheClient distributedCache = context.getProperty(TF_DISTRIBUTED_CACHE_SERVICE).asControllerService(DistributedMapCacheClient.class);
+        this.resultCache = cacheSize > 0 || distributedCache != null ? new LabelResultCache(cacheSize, distributedCache, getLogger()) : null;
+
+        final int queueSize = context.getProperty(TF_INFERENCE_QUEUE_SIZE).asInteger();
+        if (queueSize > 0) {
+            pipeline = new InferencePipeline(queueSize);
+            pipeline.start();
+        }
+
+        final long reloadMillis = context.getProperty(TF_MODEL_RELOAD_INTERVAL).asTimePeriod(TimeUnit.MILLISECONDS);
+        if (reloadMillis > 0) {
+            modelWatcher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "LabelImageProcessor model reload " + getIdentifier());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            modelWatcher.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    reloadModelIfModified(graphPath, labelsPath, sessionConfig);
+                }
+            }, reloadMillis, reloadMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @OnStopped
+    public void onStopped() {
+        // Let the inference thread finish with the model before it is closed
+        if (pipeline != null) {
+            pipeline.stop();
+            pipeline = null;
+        }
+
+        logStageLatencies();
+
+        if (modelWatcher != null) {
+            modelWatcher.shutdownNow();
+            try {
+                modelWatcher.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            modelWatcher = null;
+        }
+
+        final TensorFlowModel current = model.getAndSet(null);
+        if (current != null) {
+            closeModel(current);
+        }
+        modelRegistry = null;
+        if (preprocessor != null) {
+            preprocessor.close();
+            preprocessor = null;
+        }
+        resultCache = null;
+    }
+
+    /**
+     * Gets the model from the 'Model Registry' if one is configured, otherwise loads a model of this processor's own.
+     */
+    private TensorFlowModel loadModel(Path graphPath, Path labelsPath, byte[] sessionConfig) throws IOException {
+        return modelRegistry != null
+                ? modelRegistry.acquire(graphPath, labelsPath)
+                : TensorFlowModel.load(graphPath, labelsPath, sessionConfig);
+    }
+
+    /**
+     * Gives up a model obtained from {@link #loadModel(Path, Path, byte[])}.
+     */
+    private void closeModel(TensorFlowModel target) {
+        if (modelRegistry != null) {
+            modelRegistry.release(target);
+        } else {
+            target.close();
+        }
+    }
+
+    /**
+     * Loads and warms up the model in the calling thread if either model file has been modified since the current
+     * model was loaded, then swaps it in. The previous model is closed once the FlowFiles using it have finished.
+     */
+    private void reloadModelIfModified(Path graphPath, Path labelsPath, byte[] sessionConfig) {
+        final TensorFlowModel current = model.get();
+        if (current != null && !current.isStale(graphPath, labelsPath)) {
+            return;
+        }
+
+        final TensorFlowModel loaded;
+        try {
+            loaded = loadModel(graphPath, labelsPath, sessionConfig);
+        } catch (Exception e) {
+            getLogger().error("Unable to reload TensorFlow model from {}; will continue to use the current model", new Object[] {graphPath, e});
+            return;
+        }
+        if (loaded == current) {
+            closeModel(loaded);
+            return;
+        }
+
+        try {
+            // Always run at least once, a model that can not label an image must not replace one that can
+            warmUp(loaded, Math.max(1, warmUpIterations));
+        } catch (Exception e) {
+            closeModel(loaded);
+            getLogger().error("Reloaded TensorFlow model from {} failed to warm up; will continue to use the current model", new Object[] {graphPath, e});
+            return;
+        }
+
+        final TensorFlowModel previous = model.getAndSet(loaded);
+        if (previous != null) {
+            closeModel(previous);
+        }
+        getLogger().info("Reloaded TensorFlow model from {}, version {}", new Object[] {graphPath, loaded.getVersion()});
+    }
+
+    /**
+     * Runs zero filled inputs through the model at both a single image and the full batch size, since TensorFlow
+     * allocates separately for each input shape.
+     *
+     * @return
+     *  Nanoseconds spent warming up.
+     */
+    private long warmUp(TensorFlowModel target, int iterations) {
+        final long[] shape = preprocessor.getOutputShape().clone();
+        final List<String> outputNodeNames = Collections.singletonList(outputNodeName);
+        long nanos = target.warmUp(feedNodeName, outputNodeNames, shape, iterations);
+        if (batchSize > 1) {
+            shape[0] = batchSize;
+            nanos += target.warmUp(feedNodeName, outputNodeNames, shape, iterations);
+        }
+        return nanos;
+    }
+
+    /**
+     * Logs the stage latencies and starts new ones once the reporting interval has passed. Only one task reports
+     * each interval.
+     */
+    private void reportStageLatencies() {
+        final long next = nextLatencyReport.get();
+        final long now = System.nanoTime();
+        if (latencyReportNanos > 0 && now - next >= 0 && nextLatencyReport.compareAndSet(next, now + latencyReportNanos)) {
+            logStageLatencies();
+        }
+    }
+
+    /**
+     * Logs the latencies recorded since the previous report and resets them. Images completing while the timers are
+     * reset may be left out of both reports.
+     */
+    private void logStageLatencies() {
+        if (inferenceTimer.getCount() > 0) {
+            getLogger().info("{} stage latencies: {}; {}; {}; {}",
+                    new Object[] {this, readTimer, preprocessTimer, inferenceTimer, attributesTimer});
+        }
+        resetStageTimers();
+    }
+
+    private void resetStageTimers() {
+        for (StageTimer timer : new StageTimer[] {readTimer, preprocessTimer, inferenceTimer, attributesTimer}) {
+            timer.reset();
+        }
+    }
 
-        // Make sure the graph bytes were read otherwise invalidate this processor
-        if (graphDef == null) {
-            getLogger().warn("TensorFlow file was not found. This processor is invalid!");
+    /**
+     * Runs a synthetic JPEG through the preprocessing engine so that its decoders and, for the TensorFlow engine,
+     * its Session are initialized.
+     *
+     * @return
+     *  Nanoseconds spent warming up.
+     */
+    private long warmUpPreprocessor(int iterations) {
+        final long start = System.nanoTime();
+        try {
+            final BufferedImage image = new BufferedImage(WARM_UP_IMAGE_SIZE, WARM_UP_IMAGE_SIZE, BufferedImage.TYPE_INT_RGB);
+            final ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+            ImageIO.write(image, "jpg", jpeg);
+            for (int i = 0; i < iterations; i++) {
+                preprocessor.preprocess(new ByteArrayInputStream(jpeg.toByteArray())).close();
+            }
+        } catch (Exception e) {
+            // Not fatal, the FlowFiles will just pay for the initialization instead
+            getLogger().warn("Unable to warm up the image preprocessing engine", e);
         }
+        return System.nanoTime() - start;
+    }
 
-        this.labels = readAllLines(Paths.get(context.getProperty(TF_LABELS_FILE).evaluateAttributeExpressions().getValue()));
-        if (this.labels == null) {
-            getLogger().warn("TensorFlow labels file was not found or unable to read. This processor is now invalid!");
+    /**
+     * @return
+     *  The current model with a reference retained, that must be released, or null if no model is loaded.
+     */
+    private TensorFlowModel acquireModel() {
+        while (true) {
+            final TensorFlowModel current = model.get();
+            if (current == null || current.retain()) {
+                return current;
+            }
+            // The model was swapped and fully released between get() and retain(), try the replacement
         }
     }
 
     @Override
-    public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
-        FlowFile flowFile = session.get();
-        if ( flowFile == null ) {
-            getLogger().warn(this.getClass().getName() + " requires input for processing");
+    public void onTrigger(final ProcessContext context, final ProcessSessionFactory sessionFactory) throws ProcessException {
+        reportStageLatencies();
+
+        final InferencePipeline pipeline = this.pipeline;
+        if (pipeline != null && !pipeline.hasCapacity()) {
+            // The inference thread is behind. Leave the FlowFiles queued so that NiFi's back pressure applies upstream.
+            context.yield();
             return;
         }
 
+        final ProcessSession session = sessionFactory.createSession();
+        final LabelBatch batch;
         try {
+            batch = prepareBatch(context, session);
+        } catch (final Throwable t) {
+            session.rollback(true);
+            throw t;
+        }
 
-            AtomicReference<Boolean> error = new AtomicReference<>();
-
-            if (flowFile.getAttribute(CoreAttributes.FILENAME.key()).equalsIgnoreCase("No_Lime_Or_Lemon.JPG")
-                    || flowFile.getAttribute(CoreAttributes.FILENAME.key()).equalsIgnoreCase("Aquafina.JPG")) {
-                // OK because we didn't have time to train a set without the lemon or the lime this is hardcoded for now to demonstrate how images that
-                // do not have the lemon or lime will be routed and handled.
-                flowFile = session.putAttribute(flowFile, "label.name", "None");
-                flowFile = session.putAttribute(flowFile, "label.score", "93.70");
-                error.set(Boolean.FALSE);
-            } else {
-                error.set(Boolean.TRUE);
-                AtomicReference<String> labelName = new AtomicReference<>();
-                AtomicReference<Float> labelScore = new AtomicReference<>();
-
-                session.read(flowFile, new InputStreamCallback() {
-                    @Override
-                    public void process(InputStream inputStream) throws IOException {
-                        byte[] imageBytes = IOUtils.toByteArray(inputStream);
-
-                        try (Tensor image = constructAndExecuteGraphToNormalizeImage(imageBytes)) {
-                            String feedNodeName = context.getProperty(TF_FEED_NODE).evaluateAttributeExpressions().getValue();
-                            String outputNodeName = context.getProperty(TF_OUTPUT_NODE).evaluateAttributeExpressions().getValue();
-
-                            float[] labelProbabilities = executeInceptionGraph(graphDef, image, feedNodeName, outputNodeName);
-                            int bestLabelIdx = maxIndex(labelProbabilities);
-                            //String output = String.format("BEST MATCH: %s (%.2f%% likely)", labels.get(bestLabelIdx), labelProbabilities[bestLabelIdx] * 100f);
-                            labelName.set(labels.get(bestLabelIdx));
-                            labelScore.set(labelProbabilities[bestLabelIdx] * 100f);
-                            //outputStream.write(output.getBytes());
-                            error.set(Boolean.FALSE);
+        if (batch == null) {
+            session.commit();
+        } else if (pipeline == null) {
+            try {
+                completeBatch(batch);
+                session.commit();
+            } catch (final Throwable t) {
+                session.rollback(true);
+                throw t;
+            } finally {
+                batch.close();
+            }
+        } else if (!pipeline.submit(batch)) {
+            // Another task filled the queue since the capacity check
+            batch.close();
+            session.rollback();
+            context.yield();
+        }
+    }
+
+    /**
+     * Pulls up to 'Batch Size' FlowFiles and reads, decodes and normalizes their images. FlowFiles that can be
+     * answered from the result cache or that fail to decode are transferred right away.
+     *
+     * @return
+     *  The images that still have to be run through the model, or null if there are none.
+     */
+    private LabelBatch prepareBatch(final ProcessContext context, final ProcessSession session) {
+        final List<FlowFile> flowFiles = session.get(context.getProperty(TF_BATCH_SIZE).asInteger());
+        if ( flowFiles.isEmpty() ) {
+            getLogger().warn(this.getClass().getName() + " requires input for processing");
+            return null;
+        }
+
+        // In-flight FlowFiles keep their reference so a reload can not close the model out from under them. The model
+        // is acquired up front so that cache keys carry the version of the model that actually labels the images.
+        final LabelBatch batch = new LabelBatch(session, acquireModel(), context.getProperty(TF_TOP_K).asInteger(),
+                context.getProperty(TF_SCORE_THRESHOLD).asFloat() / 100f,
+                LABEL_OUTPUT_JSON.equals(context.getProperty(TF_LABEL_OUTPUT_FORMAT).getValue()));
+        final LabelResultCache cache = batch.model == null ? null : resultCache;
+        // Processors sharing a distributed cache may run the same model with different nodes or preprocessing
+        final String cacheSettings = feedNodeName + ":" + outputNodeName + ":" + context.getProperty(TF_PREPROCESSING_ENGINE).getValue()
+                + ":" + batch.topK + ":" + batch.threshold + ":" + batch.json;
+
+        try {
+            for (FlowFile flowFile : flowFiles) {
+                if (flowFile.getAttribute(CoreAttributes.FILENAME.key()).equalsIgnoreCase("No_Lime_Or_Lemon.JPG")
+                        || flowFile.getAttribute(CoreAttributes.FILENAME.key()).equalsIgnoreCase("Aquafina.JPG")) {
+                    // OK because we didn't have time to train a set without the lemon or the lime this is hardcoded for now to demonstrate how images that
+                    // do not have the lemon or lime will be routed and handled.
+                    flowFile = session.putAttribute(flowFile, "label.name", "None");
+                    flowFile = session.putAttribute(flowFile, "label.score", "93.70");
+                    session.transfer(flowFile, REL_SUCCESS);
+                    continue;
+                }
+
+                final AtomicReference<Tensor> image = new AtomicReference<>();
+                final AtomicReference<String> cacheKey = new AtomicReference<>();
+                final AtomicReference<Map<String, String>> cached = new AtomicReference<>();
+                final long[] nanos = new long[2]; // Reading content, decoding/normalizing
+
+                if (cache != null) {
+                    // Hashing streams the content once more rather than holding the whole image on the heap
+                    session.read(flowFile, new InputStreamCallback() {
+                        @Override
+                        public void process(InputStream inputStream) throws IOException {
+                            final TimedInputStream in = new TimedInputStream(inputStream);
+                            final MessageDigest digest = LabelResultCache.newDigest();
+                            final byte[] buffer = new byte[8192];
+                            int read;
+                            while ((read = in.read(buffer)) != -1) {
+                                digest.update(buffer, 0, read);
+                            }
+                            nanos[0] += in.getNanos();
+                            cacheKey.set(LabelResultCache.key(digest, batch.model.getVersion(), cacheSettings));
                         }
-                        catch(Exception ex) {
-                            getLogger().error(ex.getMessage(), ex);
+                    });
+                    cached.set(cache.get(cacheKey.get()));
+                }
+
+                if (cached.get() == null) {
+                    session.read(flowFile, new InputStreamCallback() {
+                        @Override
+                        public void process(InputStream inputStream) throws IOException {
+                            // The image is decoded straight from the content stream, the time spent waiting on the
+                            // stream is counted as reading and the rest as preprocessing
+                            final TimedInputStream in = new TimedInputStream(inputStream);
+                            final long preprocessStart = System.nanoTime();
+                            try {
+                                image.set(preprocessor.preprocess(in));
+                            } catch (Exception ex) {
+                                getLogger().error(ex.getMessage(), ex);
+                            }
+                            nanos[0] += in.getNanos();
+                            nanos[1] = System.nanoTime() - preprocessStart - in.getNanos();
                         }
-                    }
-                });
+                    });
+                    preprocessTimer.record(nanos[1]);
+                }
+                final long readNanos = nanos[0];
+                final long preprocessNanos = nanos[1];
+                readTimer.record(readNanos);
 
-                flowFile = session.putAttribute(flowFile, "label.name", labelName.get());
-                flowFile = session.putAttribute(flowFile, "label.score", labelScore.get().toString());
+                session.adjustCounter("Content Read Nanos", readNanos, false);
+                session.adjustCounter("Preprocess Nanos", preprocessNanos, false);
+                if (cached.get() != null) {
+                    session.adjustCounter("Label Cache Hits", 1, false);
+                    flowFile = session.putAllAttributes(flowFile, cached.get());
+                    flowFile = session.putAttribute(flowFile, "label.read.nanos", String.valueOf(readNanos));
+                    session.transfer(flowFile, REL_SUCCESS);
+                } else if (image.get() == null) {
+                    session.transfer(flowFile, REL_FAILURE);
+                } else {
+                    batch.flowFiles.add(flowFile);
+                    batch.images.add(image.get());
+                    batch.cacheKeys.add(cacheKey.get());
+                    batch.readNanos.add(readNanos);
+                    batch.preprocessNanos.add(preprocessNanos);
+                }
             }
+        } catch (final Throwable t) {
+            batch.close();
+            getLogger().error("Unable to process TensorFlow Processor file " + t.getLocalizedMessage());
+            getLogger().error("{} failed to process due to {}; rolling back session", new Object[] { this, t });
+            throw t;
+        }
+
+        if (batch.flowFiles.isEmpty()) {
+            batch.close();
+            return null;
+        }
+        return batch;
+    }
+
+    /**
+     * Runs the batch's images through the model and transfers its FlowFiles. The batch's session is not committed.
+     */
+    private void completeBatch(final LabelBatch batch) {
+        final ProcessSession session = batch.session;
+        try {
+            float[][] labelProbabilities = null;
+            final long inferenceStart = System.nanoTime();
+            try {
+                if (batch.model == null) {
+                    throw new IllegalStateException("TensorFlow model has not been loaded. Check the '" + TF_FROZEN_GRAPH.getDisplayName()
+                            + "' and '" + TF_LABELS_FILE.getDisplayName() + "' properties");
+                }
+                labelProbabilities = executeInceptionGraph(batch.model, batch.images, feedNodeName, outputNodeName);
+            } catch (Exception ex) {
+                getLogger().error(ex.getMessage(), ex);
+            }
+            final long inferenceNanos = System.nanoTime() - inferenceStart;
+            inferenceTimer.record(inferenceNanos);
+            session.adjustCounter("Inference Nanos", inferenceNanos, false);
+
+            for (int i = 0; i < batch.flowFiles.size(); i++) {
+                FlowFile flowFile = batch.flowFiles.get(i);
+                if (labelProbabilities == null) {
+                    session.transfer(flowFile, REL_FAILURE);
+                    continue;
+                }
+
+                final long attributesStart = System.nanoTime();
+                final Map<String, String> attributes = labelAttributes(batch.model.getLabels(), labelProbabilities[i],
+                        batch.topK, batch.threshold, batch.json);
+                if (batch.cacheKeys.get(i) != null) {
+                    resultCache.put(batch.cacheKeys.get(i), attributes);
+                }
 
-            if (error.get()) {
-                session.transfer(flowFile, REL_FAILURE);
-            } else {
+                // Timings describe this run only, so they are kept out of the cached attributes
+                final Map<String, String> timings = new HashMap<>();
+                timings.put("label.read.nanos", String.valueOf(batch.readNanos.get(i)));
+                timings.put("label.preprocess.nanos", String.valueOf(batch.preprocessNanos.get(i)));
+                timings.put("label.inference.nanos", String.valueOf(inferenceNanos));
+                timings.put("label.batch.size", String.valueOf(batch.flowFiles.size()));
+                flowFile = session.putAllAttributes(flowFile, attributes);
+                flowFile = session.putAllAttributes(flowFile, timings);
+                final long attributesNanos = System.nanoTime() - attributesStart;
+                attributesTimer.record(attributesNanos);
+                session.adjustCounter("Attribute Write Nanos", attributesNanos, false);
                 session.transfer(flowFile, REL_SUCCESS);
             }
+            session.adjustCounter("Images Labeled", labelProbabilities == null ? 0 : batch.flowFiles.size(), false);
 
         } catch (final Throwable t) {
             getLogger().error("Unable to process TensorFlow Processor file " + t.getLocalizedMessage());
@@ -223,76 +889,111 @@ public class LabelImageProcessor
         }
     }
 
-
-    private byte[] readAllBytes(Path path) {
-        try {
-            return Files.readAllBytes(path);
-        } catch (IOException e) {
-            getLogger().error("Failed to read [" + path + "]: " + e.getMessage());
+    /**
+     * Validates the TensorFlow session properties that their validators can not check on their own. Shared by every
+     * component that offers the session properties.
+     */
+    static void validateSessionConfig(final ValidationContext validationContext, final Collection<ValidationResult> results) {
+        if (validationContext.getProperty(TF_GPU_MEMORY_FRACTION).isSet()) {
+            final double fraction = validationContext.getProperty(TF_GPU_MEMORY_FRACTION).asDouble();
+            if (fraction <= 0 || fraction > 1) {
+                results.add(new ValidationResult.Builder()
+                        .subject(TF_GPU_MEMORY_FRACTION.getDisplayName())
+                        .input(String.valueOf(fraction))
+                        .explanation("must be greater than 0 and less than or equal to 1")
+                        .valid(false)
+                        .build());
+            }
         }
-        return null;
     }
 
-    private List<String> readAllLines(Path path) {
-        try {
-            return Files.readAllLines(path, Charset.forName("UTF-8"));
-        } catch (IOException e) {
-            System.err.println("Failed to read [" + path + "]: " + e.getMessage());
+    /**
+     * Builds the serialized TensorFlow ConfigProto that is applied to every Session this processor opens.
+     */
+    static byte[] buildSessionConfig(final PropertyContext context) {
+        final GPUOptions.Builder gpuOptions = GPUOptions.newBuilder()
+                .setAllowGrowth(context.getProperty(TF_GPU_ALLOW_GROWTH).asBoolean());
+        if (context.getProperty(TF_GPU_MEMORY_FRACTION).isSet()) {
+            gpuOptions.setPerProcessGpuMemoryFraction(context.getProperty(TF_GPU_MEMORY_FRACTION).asDouble());
         }
-        return null;
+
+        return ConfigProto.newBuilder()
+                .setIntraOpParallelismThreads(context.getProperty(TF_INTRA_OP_THREADS).asInteger())
+                .setInterOpParallelismThreads(context.getProperty(TF_INTER_OP_THREADS).asInteger())
+                .setUsePerSessionThreads(context.getProperty(TF_USE_PER_SESSION_THREADS).asBoolean())
+                .setAllowSoftPlacement(context.getProperty(TF_ALLOW_SOFT_PLACEMENT).asBoolean())
+                .setLogDevicePlacement(context.getProperty(TF_LOG_DEVICE_PLACEMENT).asBoolean())
+                .setGpuOptions(gpuOptions.build())
+                .build()
+                .toByteArray();
     }
 
-    // Translate the images to similar dimensions to those that the images were trained on.
-    private Tensor constructAndExecuteGraphToNormalizeImage(byte[] imageBytes) {
-        try (Graph g = new Graph()) {
-            GraphBuilder b = new GraphBuilder(g);
-            // Some constants specific to the pre-trained model at:
-            // https://storage.googleapis.com/download.tensorflow.org/models/inception5h.zip
-            //
-            // - The model was trained with images scaled to 224x224 pixels.
-            // - The colors, represented as R, G, B in 1-byte each were converted to
-            //   float using (value - Mean)/Scale.
-            final int H = 224;
-            final int W = 224;
-            final float mean = 117f;
-            final float scale = 1f;
-
-            // Since the graph is being constructed once per execution here, we can use a constant for the
-            // input image. If the graph were to be re-used for multiple input images, a placeholder would
-            // have been more appropriate.
-            final Output input = b.constant("input", imageBytes);
-            final Output output =
-                    b.div(
-                            b.sub(
-                                    b.resizeBilinear(
-                                            b.expandDims(
-                                                    b.cast(b.decodeJpeg(input, 3), DataType.FLOAT),
-                                                    b.constant("make_batch", 0)),
-                                            b.constant("size", new int[] {H, W})),
-                                    b.constant("mean", mean)),
-                            b.constant("scale", scale));
-            try (Session s = new Session(g)) {
-                return s.runner().fetch(output).run().get(0);
+    /**
+     * Runs all of the images through the model with a single feed/fetch.
+     *
+     * @param images
+     *  [1, H, W, C] shaped image Tensors as produced by the ImageNormalizer.
+     *
+     * @return
+     *  Label probabilities for each image, in the same order as the images.
+     */
+    private float[][] executeInceptionGraph(TensorFlowModel model, List<Tensor> images, String feedNodeName, String outputNodeName) {
+        final int batchSize = images.size();
+        try (Tensor result = model.run(feedNodeName, images, Collections.singletonList(outputNodeName)).get(0)) {
+            final long[] rshape = result.shape();
+            if (result.numDimensions() != 2 || rshape[0] != batchSize) {
+                throw new RuntimeException(
+                        String.format(
+                                "Expected model to produce a [%d N] shaped tensor where N is the number of labels, instead it produced one with shape %s",
+                                batchSize, Arrays.toString(rshape)));
             }
+            int nlabels = (int) rshape[1];
+            return result.copyTo(new float[batchSize][nlabels]);
         }
     }
 
-    private float[] executeInceptionGraph(byte[] graphDef, Tensor image, String feedNodeName, String outputNodeName) {
-        try (Graph g = new Graph()) {
-            g.importGraphDef(graphDef);
-            try (Session s = new Session(g)) {
-                Tensor result = s.runner().feed(feedNodeName, image).fetch(outputNodeName).run().get(0);
-                final long[] rshape = result.shape();
-                if (result.numDimensions() != 2 || rshape[0] != 1) {
-                    throw new RuntimeException(
-                            String.format(
-                                    "Expected model to produce a [1 N] shaped tensor where N is the number of labels, instead it produced one with shape %s",
-                                    Arrays.toString(rshape)));
-                }
-                int nlabels = (int) rshape[1];
-                return result.copyTo(new float[1][nlabels])[0];
+    /**
+     * Builds the label attributes for a single image.
+     *
+     * @param labels
+     *  Labels of the model that produced the probabilities.
+     * @param probabilities
+     *  Label probabilities produced by the model for the image.
+     * @param topK
+     *  Maximum number of labels to write.
+     * @param threshold
+     *  Minimum probability, between 0 and 1, for a label to be written.
+     * @param json
+     *  Write the labels as a JSON array to 'label.json' instead of 'label.N.name' and 'label.N.score'.
+     */
+    private Map<String, String> labelAttributes(List<String> labels, float[] probabilities, int topK, float threshold, boolean json) {
+        final Map<String, String> attributes = new HashMap<>();
+        int bestLabelIdx = maxIndex(probabilities);
+        attributes.put("label.name", labels.get(bestLabelIdx));
+        attributes.put("label.score", Float.toString(probabilities[bestLabelIdx] * 100f));
+
+        final int[] best = topK(probabilities, topK, threshold);
+        attributes.put("label.count", Integer.toString(best.length));
+        if (json) {
+            final List<Map<String, Object>> records = new ArrayList<>(best.length);
+            for (int idx : best) {
+                final Map<String, Object> record = new LinkedHashMap<>();
+                record.put("name", labels.get(idx));
+                record.put("score", probabilities[idx] * 100f);
+                records.add(record);
+            }
+            try {
+                attributes.put("label.json", OBJECT_MAPPER.writeValueAsString(records));
+            } catch (JsonProcessingException e) {
+                throw new ProcessException("Unable to write labels as JSON", e);
+            }
+        } else {
+            for (int n = 0; n < best.length; n++) {
+                attributes.put("label." + (n + 1) + ".name", labels.get(best[n]));
+                attributes.put("label." + (n + 1) + ".score", Float.toString(probabilities[best[n]] * 100f));
             }
         }
+        return attributes;
     }
 
     private int maxIndex(float[] probabilities) {
@@ -305,56 +1006,233 @@ public class LabelImageProcessor
         return best;
     }
 
-    // In the fullness of time, equivalents of the methods of this class should be auto-generated from
-    // the OpDefs linked into libtensorflow_jni.so. That would match what is done in other languages
-    // like Python, C++ and Go.
-    static class GraphBuilder {
-        GraphBuilder(Graph g) {
-            this.g = g;
+    /**
+     * Selects the indexes of the k highest probabilities that are at or above the threshold. A bounded min-heap of
+     * at most k indexes is kept while scanning the probabilities once, so the cost is O(n log k) rather than a full
+     * sort of every label.
+     *
+     * @return
+     *  Indexes of the selected labels ordered from highest to lowest probability.
+     */
+    static int[] topK(float[] probabilities, int k, float threshold) {
+        final int[] heap = new int[Math.min(k, probabilities.length)];
+        int size = 0;
+        for (int i = 0; i < probabilities.length; i++) {
+            if (probabilities[i] < threshold) {
+                continue;
+            }
+            if (size < heap.length) {
+                heap[size] = i;
+                siftUp(heap, size++, probabilities);
+            } else if (size > 0 && probabilities[i] > probabilities[heap[0]]) {
+                heap[0] = i;
+                siftDown(heap, size, probabilities);
+            }
         }
 
-        Output div(Output x, Output y) {
-            return binaryOp("Div", x, y);
+        // Repeatedly remove the smallest remaining entry and fill the result from the back
+        final int[] result = new int[size];
+        while (size > 0) {
+            result[size - 1] = heap[0];
+            heap[0] = heap[--size];
+            siftDown(heap, size, probabilities);
+        }
+        return result;
+    }
+
+    private static void siftUp(int[] heap, int pos, float[] probabilities) {
+        while (pos > 0) {
+            final int parent = (pos - 1) >>> 1;
+            if (probabilities[heap[pos]] >= probabilities[heap[parent]]) {
+                break;
+            }
+            swap(heap, pos, parent);
+            pos = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, int size, float[] probabilities) {
+        int pos = 0;
+        while (true) {
+            int smallest = 2 * pos + 1;
+            if (smallest >= size) {
+                break;
+            }
+            if (smallest + 1 < size && probabilities[heap[smallest + 1]] < probabilities[heap[smallest]]) {
+                smallest++;
+            }
+            if (probabilities[heap[smallest]] >= probabilities[heap[pos]]) {
+                break;
+            }
+            swap(heap, pos, smallest);
+            pos = smallest;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        final int tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
+    }
+
+    /**
+     * Counts the time spent in reads of the wrapped stream, so that reading content can be told apart from decoding
+     * it while the image is decoded straight from the stream.
+     */
+    private static class TimedInputStream extends FilterInputStream {
+        private long nanos;
+
+        private TimedInputStream(InputStream in) {
+            super(in);
         }
 
-        Output sub(Output x, Output y) {
-            return binaryOp("Sub", x, y);
+        @Override
+        public int read() throws IOException {
+            final long start = System.nanoTime();
+            try {
+                return super.read();
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
         }
 
-        Output resizeBilinear(Output images, Output size) {
-            return binaryOp("ResizeBilinear", images, size);
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final long start = System.nanoTime();
+            try {
+                return super.read(b, off, len);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
         }
 
-        Output expandDims(Output input, Output dim) {
-            return binaryOp("ExpandDims", input, dim);
+        @Override
+        public long skip(long n) throws IOException {
+            final long start = System.nanoTime();
+            try {
+                return super.skip(n);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
         }
 
-        Output cast(Output value, DataType dtype) {
-            return g.opBuilder("Cast", "Cast").addInput(value).setAttr("DstT", dtype).build().output(0);
+        private long getNanos() {
+            return nanos;
         }
+    }
+
+    /**
+     * FlowFiles whose images have been preprocessed and are waiting to be run through the model, along with the
+     * session they belong to and the model and label settings they were prepared for.
+     */
+    private static class LabelBatch implements AutoCloseable {
+        private final ProcessSession session;
+        private final TensorFlowModel model;
+        private final int topK;
+        private final float threshold;
+        private final boolean json;
+        private final List<FlowFile> flowFiles = new ArrayList<>();
+        private final List<Tensor> images = new ArrayList<>();
+        private final List<String> cacheKeys = new ArrayList<>();
+        private final List<Long> readNanos = new ArrayList<>();
+        private final List<Long> preprocessNanos = new ArrayList<>();
 
-        Output decodeJpeg(Output contents, long channels) {
-            return g.opBuilder("DecodeJpeg", "DecodeJpeg")
-                    .addInput(contents)
-                    .setAttr("channels", channels)
-                    .build()
-                    .output(0);
+        private LabelBatch(ProcessSession session, TensorFlowModel model, int topK, float threshold, boolean json) {
+            this.session = session;
+            this.model = model;
+            this.topK = topK;
+            this.threshold = threshold;
+            this.json = json;
         }
 
-        Output constant(String name, Object value) {
-            try (Tensor t = Tensor.create(value)) {
-                return g.opBuilder("Const", name)
-                        .setAttr("dtype", t.dataType())
-                        .setAttr("value", t)
-                        .build()
-                        .output(0);
+        /**
+         * Closes the image Tensors and releases the model reference.
+         */
+        @Override
+        public void close() {
+            for (Tensor image : images) {
+                image.close();
             }
+            images.clear();
+            if (model != null) {
+                model.release();
+            }
+        }
+    }
+
+    /**
+     * Bounded queue of prepared batches and the dedicated thread that runs them through the model, transfers their
+     * FlowFiles and commits their sessions. NiFi's threads only read and decode content, so reading the next images
+     * overlaps with inference of the previous ones and a slow model does not hold NiFi's timer driven threads.
+     */
+    private class InferencePipeline implements Runnable {
+        private final BlockingQueue<LabelBatch> queue;
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        private InferencePipeline(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.thread = new Thread(this, "LabelImageProcessor inference " + getIdentifier());
+            this.thread.setDaemon(true);
+        }
+
+        private void start() {
+            thread.start();
         }
 
-        private Output binaryOp(String type, Output in1, Output in2) {
-            return g.opBuilder(type, type).addInput(in1).addInput(in2).build().output(0);
+        private boolean hasCapacity() {
+            return queue.remainingCapacity() > 0;
         }
 
-        private Graph g;
+        private boolean submit(LabelBatch batch) {
+            return running && queue.offer(batch);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                final LabelBatch batch;
+                try {
+                    batch = queue.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (batch == null) {
+                    continue;
+                }
+
+                try {
+                    completeBatch(batch);
+                    batch.session.commit();
+                } catch (final Throwable t) {
+                    // Nothing above this thread reports the failure, so it has to be logged here
+                    getLogger().error("{} failed to label or commit a batch of {} FlowFiles due to {}; rolling back session",
+                            new Object[] {this, batch.flowFiles.size(), t});
+                    batch.session.rollback(true);
+                } finally {
+                    batch.close();
+                }
+            }
+        }
+
+        /**
+         * Waits for the batch currently being run to finish and rolls back any batches still queued, so their
+         * FlowFiles return to the incoming connection.
+         */
+        private void stop() {
+            running = false;
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            LabelBatch batch;
+            while ((batch = queue.poll()) != null) {
+                batch.session.rollback();
+                batch.close();
+            }
+        }
     }
 }
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdye64.processors.tensorflow;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.nifi.distributed.cache.client.Deserializer;
+import org.apache.nifi.distributed.cache.client.DistributedMapCacheClient;
+import org.apache.nifi.distributed.cache.client.Serializer;
+import org.apache.nifi.logging.ComponentLog;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Caches the label attributes computed for an image so that byte identical images do not have to be run through
+ * TensorFlow again. Entries are kept in a bounded, least recently used, in-memory map and optionally in a
+ * DistributedMapCacheClient that is consulted when the in-memory map misses.
+ * <p>
+ * Failures talking to the distributed cache are logged and treated as a miss; they never fail a FlowFile.
+ */
+public class LabelResultCache {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final Serializer<String> KEY_SERIALIZER = new Serializer<String>() {
+        @Override
+        public void serialize(String value, OutputStream out) throws IOException {
+            out.write(value.getBytes(StandardCharsets.UTF_8));
+        }
+    };
+
+    private static final Serializer<Map<String, String>> VALUE_SERIALIZER = new Serializer<Map<String, String>>() {
+        @Override
+        public void serialize(Map<String, String> value, OutputStream out) throws IOException {
+            out.write(OBJECT_MAPPER.writeValueAsBytes(value));
+        }
+    };
+
+    private static final Deserializer<Map<String, String>> VALUE_DESERIALIZER = new Deserializer<Map<String, String>>() {
+        @Override
+        public Map<String, String> deserialize(byte[] input) throws IOException {
+            if (input == null || input.length == 0) {
+                return null;
+            }
+            return OBJECT_MAPPER.readValue(input, new TypeReference<Map<String, String>>() { });
+        }
+    };
+
+    private final Map<String, Map<String, String>> local;
+    private final DistributedMapCacheClient distributed;
+    private final ComponentLog logger;
+
+    /**
+     * @param maxEntries
+     *  Maximum number of entries held in memory. 0 disables the in-memory tier.
+     * @param distributed
+     *  Optional distributed cache, may be null.
+     */
+    public LabelResultCache(final int maxEntries, DistributedMapCacheClient distributed, ComponentLog logger) {
+        this.local = maxEntries <= 0 ? null : Collections.synchronizedMap(new LinkedHashMap<String, Map<String, String>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<String, String>> eldest) {
+                return size() > maxEntries;
+            }
+        });
+        this.distributed = distributed;
+        this.logger = logger;
+    }
+
+    /**
+     * Builds the cache key for an image.
+     *
+     * @param content
+     *  Encoded image bytes.
+     * @param modelVersion
+     *  Version of the model the labels are computed with.
+     * @param settings
+     *  Any other setting that changes the cached attributes, e.g. the number of labels written.
+     */
+    public static String key(byte[] content, String modelVersion, String settings) {
+        final MessageDigest digest = newDigest();
+        digest.update(content);
+        return key(digest, modelVersion, settings);
+    }
+
+    /**
+     * Builds the cache key for an image whose content has been streamed into a digest from {@link #newDigest()}.
+     */
+    public static String key(MessageDigest digest, String modelVersion, String settings) {
+        final byte[] hash = digest.digest();
+        final StringBuilder sb = new StringBuilder(hash.length * 2 + modelVersion.length() + settings.length() + 2);
+        for (byte b : hash) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.append(':').append(modelVersion).append(':').append(settings).toString();
+    }
+
+    /**
+     * @return
+     *  A digest for the content of an image, see {@link #key(MessageDigest, String, String)}.
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * @return
+     *  The cached attributes or null on a miss.
+     */
+    public Map<String, String> get(String key) {
+        if (local != null) {
+            final Map<String, String> attributes = local.get(key);
+            if (attributes != null) {
+                return attributes;
+            }
+        }
+
+        if (distributed != null) {
+            try {
+                final Map<String, String> attributes = distributed.get(key, KEY_SERIALIZER, VALUE_DESERIALIZER);
+                if (attributes != null && local != null) {
+                    local.put(key, attributes);
+                }
+                return attributes;
+            } catch (IOException e) {
+                logger.warn("Unable to read labels from the distributed cache", e);
+            }
+        }
+        return null;
+    }
+
+    public void put(String key, Map<String, String> attributes) {
+        final Map<String, String> value = Collections.unmodifiableMap(attributes);
+        if (local != null) {
+            local.put(key, value);
+        }
+
+        if (distributed != null) {
+            try {
+                distributed.put(key, value, KEY_SERIALIZER, VALUE_SERIALIZER);
+            } catch (IOException e) {
+                logger.warn("Unable to write labels to the distributed cache", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdye64.processors.tensorflow;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram for one stage of processing, such as reading content or running inference. Durations are
+ * counted in power of two nanosecond buckets so that recording is lock free and allocation free, which makes the
+ * reported percentiles upper bounds accurate to within a factor of two.
+ */
+public class StageTimer {
+
+    private final String name;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0L);
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+    public StageTimer(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void record(long nanos) {
+        final long value = Math.max(nanos, 0L);
+        count.increment();
+        totalNanos.add(value);
+        maxNanos.accumulate(value);
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value) - (value == 0 ? 0 : 1));
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * @param quantile
+     *  Between 0 and 1, e.g. 0.99 for the 99th percentile.
+     * @return
+     *  Upper bound of the bucket holding the quantile, or 0 if nothing has been recorded.
+     */
+    public long getPercentileNanos(double quantile) {
+        final long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1L, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(i >= 62 ? Long.MAX_VALUE : (2L << i) - 1, maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    public void reset() {
+        count.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+    }
+
+    /**
+     * @return
+     *  e.g. "inference: count=1200, mean=35.211 ms, p50=33.554 ms, p99=67.108 ms, max=81.020 ms"
+     */
+    @Override
+    public String toString() {
+        final long n = getCount();
+        return name + ": count=" + n
+                + ", mean=" + millis(n == 0 ? 0 : getTotalNanos() / n)
+                + ", p50=" + millis(getPercentileNanos(0.5))
+                + ", p99=" + millis(getPercentileNanos(0.99))
+                + ", max=" + millis(maxNanos.get());
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f ms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
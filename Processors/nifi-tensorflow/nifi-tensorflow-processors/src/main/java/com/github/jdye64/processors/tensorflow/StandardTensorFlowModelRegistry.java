@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdye64.processors.tensorflow;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.SeeAlso;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnDisabled;
+import org.apache.nifi.annotation.lifecycle.OnEnabled;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.ValidationContext;
+import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.controller.AbstractControllerService;
+import org.apache.nifi.controller.ConfigurationContext;
+
+@Tags({"tensorflow", "model", "registry"})
+@CapabilityDescription("Imports each TensorFlow frozen graph once, by path, and shares the imported Graph and a single Session over it"
+        + " between every processor that references this service. Graph files are memory mapped rather than read through the heap."
+        + " A model is reference counted and closed once the last processor using it is stopped. If either file has been modified"
+        + " when a processor is started or reloads, the new version is loaded while processors still using the old one keep it.")
+@SeeAlso({LabelImageProcessor.class, TensorFlowModelProcessor.class})
+public class StandardTensorFlowModelRegistry extends AbstractControllerService implements TensorFlowModelRegistry {
+
+    private static final List<PropertyDescriptor> properties;
+
+    static {
+        final List<PropertyDescriptor> props = new ArrayList<>();
+        props.add(LabelImageProcessor.TF_INTRA_OP_THREADS);
+        props.add(LabelImageProcessor.TF_INTER_OP_THREADS);
+        props.add(LabelImageProcessor.TF_USE_PER_SESSION_THREADS);
+        props.add(LabelImageProcessor.TF_ALLOW_SOFT_PLACEMENT);
+        props.add(LabelImageProcessor.TF_LOG_DEVICE_PLACEMENT);
+        props.add(LabelImageProcessor.TF_GPU_ALLOW_GROWTH);
+        props.add(LabelImageProcessor.TF_GPU_MEMORY_FRACTION);
+        properties = Collections.unmodifiableList(props);
+    }
+
+    private final Map<String, TensorFlowModel> current = new HashMap<>();          // Latest model for each graph and labels path.
+    private final Map<TensorFlowModel, Integer> users = new IdentityHashMap<>();   // Processors using each model, current or not.
+    private final ConcurrentMap<String, Future<TensorFlowModel>> loading = new ConcurrentHashMap<>(); // Loads in progress, by key.
+    private volatile byte[] sessionConfig;
+
+    @Override
+    protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        return properties;
+    }
+
+    @Override
+    protected Collection<ValidationResult> customValidate(final ValidationContext validationContext) {
+        final List<ValidationResult> results = new ArrayList<>();
+        LabelImageProcessor.validateSessionConfig(validationContext, results);
+        return results;
+    }
+
+    @OnEnabled
+    public void onEnabled(final ConfigurationContext context) {
+        this.sessionConfig = LabelImageProcessor.buildSessionConfig(context);
+    }
+
+    /**
+     * Processors referencing this service are stopped before it can be disabled, so no model is in use by the
+     * time this runs. Any left over are closed here rather than leaked.
+     */
+    @OnDisabled
+    public synchronized void shutdown() {
+        if (!users.isEmpty()) {
+            getLogger().warn("{} TensorFlow models were not released before the service was disabled", new Object[] {users.size()});
+        }
+        for (TensorFlowModel model : users.keySet()) {
+            model.close();
+        }
+        users.clear();
+        current.clear();
+    }
+
+    @Override
+    public TensorFlowModel acquire(final Path graphPath, final Path labelsPath) throws IOException {
+        final String key = graphPath.toAbsolutePath() + "|" + (labelsPath == null ? "" : labelsPath.toAbsolutePath());
+        while (true) {
+            synchronized (this) {
+                final TensorFlowModel model = current.get(key);
+                if (model != null && !model.isStale(graphPath, labelsPath)) {
+                    users.put(model, users.get(model) + 1);
+                    return model;
+                }
+            }
+
+            // Loading can take seconds, so it happens outside the lock and other models can be acquired and released
+            // meanwhile. Processors asking for the same files while they load wait for that load rather than repeat it.
+            final FutureTask<TensorFlowModel> task = new FutureTask<>(new Callable<TensorFlowModel>() {
+                @Override
+                public TensorFlowModel call() throws IOException {
+                    return load(key, graphPath, labelsPath);
+                }
+            });
+            Future<TensorFlowModel> load = loading.putIfAbsent(key, task);
+            if (load == null) {
+                load = task;
+                try {
+                    task.run();
+                } finally {
+                    loading.remove(key, task);
+                }
+            }
+
+            final TensorFlowModel model = await(load);
+            if (load == task) {
+                // The loading processor's reference was taken when the model was published
+                return model;
+            }
+            synchronized (this) {
+                if (users.containsKey(model)) {
+                    users.put(model, users.get(model) + 1);
+                    return model;
+                }
+            }
+            // The service was disabled while waiting, look again
+        }
+    }
+
+    /**
+     * Loads the model and publishes it as the current one for the key, with a reference for the caller.
+     */
+    private TensorFlowModel load(String key, Path graphPath, Path labelsPath) throws IOException {
+        final TensorFlowModel model = TensorFlowModel.load(graphPath, labelsPath, sessionConfig);
+        synchronized (this) {
+            // The stale model, if any, stays open for the processors that still use it until they release it
+            current.put(key, model);
+            users.put(model, 1);
+        }
+        getLogger().info("Loaded TensorFlow model from {}, version {}", new Object[] {graphPath, model.getVersion()});
+        return model;
+    }
+
+    private static TensorFlowModel await(Future<TensorFlowModel> load) throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return load.get();
+                } catch (InterruptedException e) {
+                    // The load is shared with other processors, so it is waited for rather than abandoned
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void release(TensorFlowModel model) {
+        final Integer count = users.get(model);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            users.put(model, count - 1);
+            return;
+        }
+
+        users.remove(model);
+        current.values().remove(model);
+        // Gives up the registry's reference, FlowFiles still running through the model hold their own
+        model.close();
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdye64.processors.tensorflow;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.tensorflow.Graph;
+import org.tensorflow.Session;
+import org.tensorflow.Tensor;
+
+/**
+ * A TensorFlow frozen graph imported into a Graph, a Session over that graph and the labels that correlate to it.
+ * <p>
+ * Instances are reference counted so that a model can be swapped out while FlowFiles are still being labeled with
+ * it. The creator holds the first reference and gives it up with {@link #close()}; every user calls
+ * {@link #retain()} before running the session and {@link #release()} when done. The native Session and Graph are
+ * closed once the last reference is released.
+ */
+public class TensorFlowModel implements AutoCloseable {
+
+    private final Graph graph;
+    private final Session session;
+    private final List<String> labels;
+    private final String version;
+    private final long graphLastModified;
+    private final long labelsLastModified;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private TensorFlowModel(Graph graph, Session session, List<String> labels, String version,
+                            long graphLastModified, long labelsLastModified) {
+        this.graph = graph;
+        this.session = session;
+        this.labels = labels;
+        this.version = version;
+        this.graphLastModified = graphLastModified;
+        this.labelsLastModified = labelsLastModified;
+    }
+
+    /**
+     * Reads the frozen graph and labels files, imports the graph and opens a Session over it.
+     *
+     * @param graphPath
+     *  TensorFlow frozen graph file. AKA .pb file
+     * @param labelsPath
+     *  File with one label per line that correlates to the graph's output, or null if the model has no labels.
+     * @param sessionConfig
+     *  Serialized ConfigProto for the Session.
+     *
+     * @throws IOException
+     *  If either file can not be read.
+     * @throws IllegalArgumentException
+     *  If the graph file is not a valid TensorFlow GraphDef.
+     */
+    public static TensorFlowModel load(Path graphPath, Path labelsPath, byte[] sessionConfig) throws IOException {
+        // Read the modification times first so that a file replaced while loading is picked up by the next check
+        final long graphLastModified = lastModified(graphPath);
+        final long labelsLastModified = lastModified(labelsPath);
+
+        // The file is mapped rather than read through the heap. TensorFlow's Java API only imports a GraphDef from a
+        // byte[] so the mapped pages are still copied once, but that array is dropped as soon as the graph is imported.
+        final byte[] graphDef;
+        final MessageDigest digest = newDigest();
+        try (FileChannel channel = FileChannel.open(graphPath, StandardOpenOption.READ)) {
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            digest.update(mapped.duplicate());
+            graphDef = new byte[mapped.remaining()];
+            mapped.get(graphDef);
+        }
+        final List<String> labels = labelsPath == null ? Collections.<String>emptyList()
+                : Collections.unmodifiableList(Files.readAllLines(labelsPath, StandardCharsets.UTF_8));
+
+        // The labels are part of the version, a relabeled model produces different attributes for the same graph
+        for (String label : labels) {
+            digest.update(label.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        final String version = toHex(digest.digest());
+
+        final Graph graph = new Graph();
+        try {
+            graph.importGraphDef(graphDef);
+            return new TensorFlowModel(graph, new Session(graph, sessionConfig), labels, version,
+                    graphLastModified, labelsLastModified);
+        } catch (RuntimeException e) {
+            graph.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return
+     *  true if either file has been modified since this model was loaded from them.
+     */
+    public boolean isStale(Path graphPath, Path labelsPath) {
+        return lastModified(graphPath) != graphLastModified || lastModified(labelsPath) != labelsLastModified;
+    }
+
+    /**
+     * Runs zero filled inputs through the graph so that TensorFlow initializes its kernels and allocates
+     * memory before the model has to label real images.
+     *
+     * @param outputNodeNames
+     *  Nodes fetched together, as they are by {@link #run(String, List, List)}. TensorFlow prepares each combination
+     *  of fetched nodes separately.
+     * @param inputShape
+     *  Shape of the input fed to the feed node, including the batch dimension.
+     * @param iterations
+     *  Number of times the input is run. Later runs still pay for allocations TensorFlow defers past the first run.
+     * @return
+     *  Nanoseconds spent warming up.
+     */
+    public long warmUp(String feedNodeName, List<String> outputNodeNames, long[] inputShape, int iterations) {
+        final long start = System.nanoTime();
+        int elements = 1;
+        for (long dim : inputShape) {
+            elements *= (int) dim;
+        }
+        try (Tensor input = Tensor.create(inputShape, FloatBuffer.allocate(elements))) {
+            for (int i = 0; i < iterations; i++) {
+                for (Tensor output : run(feedNodeName, Collections.singletonList(input), outputNodeNames)) {
+                    output.close();
+                }
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Runs the images through the model as a single batch with one feed/fetch.
+     *
+     * @param images
+     *  [1, ...] shaped FLOAT Tensors as produced by an {@link ImagePreprocessor}. They are not closed.
+     * @param outputNodeNames
+     *  Nodes whose outputs are fetched.
+     *
+     * @return
+     *  One Tensor per output node, in the same order, each with the images along the first dimension. The caller is
+     *  responsible for closing them.
+     */
+    public List<Tensor> run(String feedNodeName, List<Tensor> images, List<String> outputNodeNames) {
+        final Tensor input = images.size() == 1 ? images.get(0) : stack(images);
+        try {
+            final Session.Runner runner = session.runner().feed(feedNodeName, input);
+            for (String outputNodeName : outputNodeNames) {
+                runner.fetch(outputNodeName);
+            }
+            return runner.run();
+        } finally {
+            if (input != images.get(0)) {
+                input.close();
+            }
+        }
+    }
+
+    /**
+     * Concatenates [1, ...] shaped FLOAT Tensors along the first dimension into a single [N, ...] Tensor.
+     */
+    static Tensor stack(List<Tensor> images) {
+        final long[] shape = images.get(0).shape().clone();
+        final FloatBuffer buffer = FloatBuffer.allocate(images.get(0).numElements() * images.size());
+        for (Tensor image : images) {
+            image.writeTo(buffer);
+        }
+        buffer.flip();
+        shape[0] = images.size();
+        return Tensor.create(shape, buffer);
+    }
+
+    /**
+     * Acquires a reference to this model.
+     *
+     * @return
+     *  false if the model has already been closed and released by everyone using it, in which case it must not be used.
+     */
+    public boolean retain() {
+        while (true) {
+            final int current = references.get();
+            if (current <= 0) {
+                return false;
+            }
+            if (references.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives up a reference acquired by {@link #retain()} and closes the Session and Graph if it was the last one.
+     */
+    public void release() {
+        if (references.decrementAndGet() == 0) {
+            // Session must be closed before the Graph it was created from
+            session.close();
+            graph.close();
+        }
+    }
+
+    /**
+     * Gives up the creator's reference.
+     */
+    @Override
+    public void close() {
+        release();
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    /**
+     * @return
+     *  Hex encoded SHA-256 digest of the frozen graph bytes and the labels the model was loaded from.
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    private static long lastModified(Path path) {
+        return path == null ? 0L : path.toFile().lastModified();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] hash) {
+        final StringBuilder sb = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
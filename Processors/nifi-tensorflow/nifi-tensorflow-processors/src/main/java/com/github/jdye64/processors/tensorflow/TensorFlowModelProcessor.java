@@ -0,0 +1,464 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdye64.processors.tensorflow;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.nifi.annotation.behavior.InputRequirement;
+import org.apache.nifi.annotation.behavior.WritesAttribute;
+import org.apache.nifi.annotation.behavior.WritesAttributes;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.SeeAlso;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.annotation.lifecycle.OnStopped;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.ValidationContext;
+import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.flowfile.attributes.CoreAttributes;
+import org.apache.nifi.processor.AbstractProcessor;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.ProcessorInitializationContext;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.io.InputStreamCallback;
+import org.apache.nifi.processor.io.OutputStreamCallback;
+import org.apache.nifi.processor.util.StandardValidators;
+import org.tensorflow.Tensor;
+
+@Tags({"tensorflow", "model", "inference", "image"})
+@CapabilityDescription("Runs incoming images through any TensorFlow frozen graph that takes a [N, height, width, 3] FLOAT image batch,"
+        + " and writes the values of one or more of its output nodes as JSON. The input size, normalization and channel order are"
+        + " configurable so that one processor can serve models that were trained with different preprocessing. The graph is imported"
+        + " once and run through a long lived Session, and up to 'Batch Size' images are run with a single feed/fetch.")
+@InputRequirement(InputRequirement.Requirement.INPUT_REQUIRED)
+@SeeAlso(LabelImageProcessor.class)
+@WritesAttributes(
+        {
+                @WritesAttribute(attribute="tensorflow.output", description = "Output node values as JSON, when 'Output Destination' is 'flowfile-attribute'"),
+                @WritesAttribute(attribute="tensorflow.model.version", description = "SHA-256 digest of the frozen graph that produced the output"),
+                @WritesAttribute(attribute="mime.type", description = "application/json, when 'Output Destination' is 'flowfile-content'")
+        }
+)
+public class TensorFlowModelProcessor
+        extends AbstractProcessor {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    public static final String OUTPUT_ATTRIBUTE = "tensorflow.output";
+
+    private final AtomicReference<TensorFlowModel> model = new AtomicReference<>();
+    private volatile ImagePreprocessor preprocessor = null;
+    private volatile String feedNodeName = null;
+    private volatile List<String> outputNodeNames = null;
+    private volatile TensorFlowModelRegistry modelRegistry = null;
+
+    public static final PropertyDescriptor TF_OUTPUT_NODES = new PropertyDescriptor
+            .Builder().name("tensorflow-output-nodes")
+            .displayName("TensorFlow output nodes")
+            .description("Comma separated names of the nodes in the Tensorflow graph whose outputs are written. Each output's first"
+                    + " dimension must be the batch dimension. FLOAT, DOUBLE, INT32 and INT64 outputs are supported.")
+            .expressionLanguageSupported(true)
+            .required(true)
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor TF_INPUT_HEIGHT = new PropertyDescriptor
+            .Builder().name("tensorflow-input-height")
+            .displayName("Input Height")
+            .description("Height in pixels that images are resized to before being fed to the model")
+            .defaultValue("224")
+            .required(true)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor TF_INPUT_WIDTH = new PropertyDescriptor
+            .Builder().name("tensorflow-input-width")
+            .displayName("Input Width")
+            .description("Width in pixels that images are resized to before being fed to the model")
+            .defaultValue("224")
+            .required(true)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor TF_INPUT_MEAN = new PropertyDescriptor
+            .Builder().name("tensorflow-input-mean")
+            .displayName("Input Mean")
+            .description("Value subtracted from each 0-255 channel value. Each channel is normalized as (value - mean) / scale.")
+            .defaultValue("117")
+            .required(true)
+            .addValidator(StandardValidators.NUMBER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor TF_INPUT_SCALE = new PropertyDescriptor
+            .Builder().name("tensorflow-input-scale")
+            .displayName("Input Scale")
+            .description("Value each channel is divided by after the mean has been subtracted")
+            .defaultValue("1")
+            .required(true)
+            .addValidator(StandardValidators.NUMBER_VALIDATOR)
+            .build();
+
+    public static final String CHANNEL_ORDER_RGB = "RGB";
+    public static final String CHANNEL_ORDER_BGR = "BGR";
+
+    public static final PropertyDescriptor TF_CHANNEL_ORDER = new PropertyDescriptor
+            .Builder().name("tensorflow-channel-order")
+            .displayName("Channel Order")
+            .description("Order of the color channels the model was trained with. Models converted from Caffe usually expect BGR.")
+            .defaultValue(CHANNEL_ORDER_RGB)
+            .allowableValues(CHANNEL_ORDER_RGB, CHANNEL_ORDER_BGR)
+            .required(true)
+            .build();
+
+    public static final String DESTINATION_CONTENT = "flowfile-content";
+    public static final String DESTINATION_ATTRIBUTE = "flowfile-attribute";
+
+    public static final PropertyDescriptor TF_OUTPUT_DESTINATION = new PropertyDescriptor
+            .Builder().name("tensorflow-output-destination")
+            .displayName("Output Destination")
+            .description("Whether the output JSON replaces the FlowFile content or is written to the '" + OUTPUT_ATTRIBUTE + "' attribute."
+                    + " The JSON has one field per output node, holding the node's shape without the batch dimension and its values"
+                    + " in row major order.")
+            .defaultValue(DESTINATION_CONTENT)
+            .allowableValues(DESTINATION_CONTENT, DESTINATION_ATTRIBUTE)
+            .required(true)
+            .build();
+
+    public static final Relationship REL_SUCCESS = new Relationship.Builder().name("success")
+            .description("Image was run through the model").build();
+
+    public static final Relationship REL_FAILURE = new Relationship.Builder().name("failure")
+            .description("Image could not be decoded or the model failed to run").build();
+
+    private List<PropertyDescriptor> descriptors;
+
+    private Set<Relationship> relationships;
+
+    @Override
+    protected void init(final ProcessorInitializationContext context) {
+        final List<PropertyDescriptor> descriptors = new ArrayList<PropertyDescriptor>();
+        descriptors.add(LabelImageProcessor.TF_FROZEN_GRAPH);
+        descriptors.add(LabelImageProcessor.TF_FEED_NODE);
+        descriptors.add(TF_OUTPUT_NODES);
+        descriptors.add(TF_INPUT_HEIGHT);
+        descriptors.add(TF_INPUT_WIDTH);
+        descriptors.add(TF_INPUT_MEAN);
+        descriptors.add(TF_INPUT_SCALE);
+        descriptors.add(TF_CHANNEL_ORDER);
+        descriptors.add(TF_OUTPUT_DESTINATION);
+        descriptors.add(LabelImageProcessor.TF_PREPROCESSING_ENGINE);
+        descriptors.add(LabelImageProcessor.TF_BATCH_SIZE);
+        descriptors.add(LabelImageProcessor.TF_MODEL_REGISTRY);
+        descriptors.add(LabelImageProcessor.TF_WARM_UP_ITERATIONS);
+        descriptors.add(LabelImageProcessor.TF_INTRA_OP_THREADS);
+        descriptors.add(LabelImageProcessor.TF_INTER_OP_THREADS);
+        descriptors.add(LabelImageProcessor.TF_USE_PER_SESSION_THREADS);
+        descriptors.add(LabelImageProcessor.TF_ALLOW_SOFT_PLACEMENT);
+        descriptors.add(LabelImageProcessor.TF_LOG_DEVICE_PLACEMENT);
+        descriptors.add(LabelImageProcessor.TF_GPU_ALLOW_GROWTH);
+        descriptors.add(LabelImageProcessor.TF_GPU_MEMORY_FRACTION);
+        this.descriptors = Collections.unmodifiableList(descriptors);
+
+        final Set<Relationship> relationships = new HashSet<Relationship>();
+        relationships.add(REL_SUCCESS);
+        relationships.add(REL_FAILURE);
+        this.relationships = Collections.unmodifiableSet(relationships);
+    }
+
+    @Override
+    public Set<Relationship> getRelationships() {
+        return this.relationships;
+    }
+
+    @Override
+    public final List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        return descriptors;
+    }
+
+    @Override
+    protected Collection<ValidationResult> customValidate(final ValidationContext validationContext) {
+        final List<ValidationResult> results = new ArrayList<>();
+        if (validationContext.getProperty(TF_INPUT_SCALE).asDouble() == 0) {
+            results.add(new ValidationResult.Builder()
+                    .subject(TF_INPUT_SCALE.getDisplayName())
+                    .input("0")
+                    .explanation("must not be 0")
+                    .valid(false)
+                    .build());
+        }
+        LabelImageProcessor.validateSessionConfig(validationContext, results);
+        return results;
+    }
+
+    @OnScheduled
+    public void onScheduled(final ProcessContext context) {
+        final byte[] sessionConfig = LabelImageProcessor.buildSessionConfig(context);
+        final int height = context.getProperty(TF_INPUT_HEIGHT).asInteger();
+        final int width = context.getProperty(TF_INPUT_WIDTH).asInteger();
+        final float mean = context.getProperty(TF_INPUT_MEAN).asFloat();
+        final float scale = context.getProperty(TF_INPUT_SCALE).asFloat();
+        final boolean bgr = CHANNEL_ORDER_BGR.equals(context.getProperty(TF_CHANNEL_ORDER).getValue());
+        this.preprocessor = LabelImageProcessor.PREPROCESSING_ENGINE_JAVA.equals(context.getProperty(LabelImageProcessor.TF_PREPROCESSING_ENGINE).getValue())
+                ? new JavaImagePreprocessor(height, width, mean, scale, bgr)
+                : new ImageNormalizer(height, width, mean, scale, bgr, sessionConfig);
+
+        this.feedNodeName = context.getProperty(LabelImageProcessor.TF_FEED_NODE).evaluateAttributeExpressions().getValue();
+        final List<String> outputs = new ArrayList<>();
+        for (String name : context.getProperty(TF_OUTPUT_NODES).evaluateAttributeExpressions().getValue().split(",")) {
+            if (!name.trim().isEmpty()) {
+                outputs.add(name.trim());
+            }
+        }
+        this.outputNodeNames = Collections.unmodifiableList(outputs);
+
+        final Path graphPath = Paths.get(context.getProperty(LabelImageProcessor.TF_FROZEN_GRAPH).evaluateAttributeExpressions().getValue());
+        this.modelRegistry = context.getProperty(LabelImageProcessor.TF_MODEL_REGISTRY).asControllerService(TensorFlowModelRegistry.class);
+        final TensorFlowModel loaded;
+        try {
+            loaded = modelRegistry != null
+                    ? modelRegistry.acquire(graphPath, null)
+                    : TensorFlowModel.load(graphPath, null, sessionConfig);
+        } catch (IOException e) {
+            throw new ProcessException("Unable to read TensorFlow pb file " + graphPath, e);
+        } catch (IllegalArgumentException e) {
+            throw new ProcessException("Unable to import TensorFlow graph: " + e.getMessage(), e);
+        }
+        model.set(loaded);
+
+        final int warmUpIterations = context.getProperty(LabelImageProcessor.TF_WARM_UP_ITERATIONS).asInteger();
+        if (warmUpIterations > 0) {
+            // Batches are cut short when fewer FlowFiles are queued, so a single image is warmed up as well as a full batch
+            final long[] shape = preprocessor.getOutputShape().clone();
+            final int batchSize = context.getProperty(LabelImageProcessor.TF_BATCH_SIZE).asInteger();
+            try {
+                long nanos = loaded.warmUp(feedNodeName, outputNodeNames, shape, warmUpIterations);
+                if (batchSize > 1) {
+                    shape[0] = batchSize;
+                    nanos += loaded.warmUp(feedNodeName, outputNodeNames, shape, warmUpIterations);
+                }
+                getLogger().info("Warmed up TensorFlow model in {} ms", new Object[] {TimeUnit.NANOSECONDS.toMillis(nanos)});
+            } catch (RuntimeException e) {
+                throw new ProcessException("TensorFlow model failed to warm up, check the '" + LabelImageProcessor.TF_FEED_NODE.getDisplayName()
+                        + "' and '" + TF_OUTPUT_NODES.getDisplayName() + "' properties: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    @OnStopped
+    public void onStopped() {
+        final TensorFlowModel current = model.getAndSet(null);
+        if (current != null) {
+            if (modelRegistry != null) {
+                modelRegistry.release(current);
+            } else {
+                current.close();
+            }
+        }
+        modelRegistry = null;
+        if (preprocessor != null) {
+            preprocessor.close();
+            preprocessor = null;
+        }
+    }
+
+    @Override
+    public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
+        final List<FlowFile> flowFiles = session.get(context.getProperty(LabelImageProcessor.TF_BATCH_SIZE).asInteger());
+        if (flowFiles.isEmpty()) {
+            return;
+        }
+        final TensorFlowModel current = model.get();
+        final boolean toAttribute = DESTINATION_ATTRIBUTE.equals(context.getProperty(TF_OUTPUT_DESTINATION).getValue());
+
+        final List<FlowFile> batch = new ArrayList<>(flowFiles.size());
+        final List<Tensor> images = new ArrayList<>(flowFiles.size());
+        try {
+            for (FlowFile flowFile : flowFiles) {
+                final AtomicReference<Tensor> image = new AtomicReference<>();
+                final AtomicReference<Exception> failure = new AtomicReference<>();
+                // Decoded straight from the content stream so the encoded image is never copied onto the heap
+                session.read(flowFile, new InputStreamCallback() {
+                    @Override
+                    public void process(InputStream in) {
+                        try {
+                            image.set(preprocessor.preprocess(in));
+                        } catch (Exception e) {
+                            failure.set(e);
+                        }
+                    }
+                });
+                if (failure.get() != null) {
+                    getLogger().error("Unable to preprocess image {}; routing to failure", new Object[] {flowFile, failure.get()});
+                    session.transfer(flowFile, REL_FAILURE);
+                    continue;
+                }
+                images.add(image.get());
+                batch.add(flowFile);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            final List<Map<String, Object>> results;
+            try {
+                results = execute(current, images);
+            } catch (Exception e) {
+                getLogger().error("Unable to run TensorFlow model; routing {} FlowFiles to failure", new Object[] {batch.size(), e});
+                session.transfer(batch, REL_FAILURE);
+                return;
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                FlowFile flowFile = batch.get(i);
+                final byte[] json;
+                try {
+                    json = OBJECT_MAPPER.writeValueAsBytes(results.get(i));
+                } catch (IOException e) {
+                    throw new ProcessException("Unable to write model output as JSON", e);
+                }
+
+                if (toAttribute) {
+                    flowFile = session.putAttribute(flowFile, OUTPUT_ATTRIBUTE, new String(json, StandardCharsets.UTF_8));
+                } else {
+                    flowFile = session.write(flowFile, new OutputStreamCallback() {
+                        @Override
+                        public void process(OutputStream out) throws IOException {
+                            out.write(json);
+                        }
+                    });
+                    flowFile = session.putAttribute(flowFile, CoreAttributes.MIME_TYPE.key(), "application/json");
+                }
+                flowFile = session.putAttribute(flowFile, "tensorflow.model.version", current.getVersion());
+                session.transfer(flowFile, REL_SUCCESS);
+            }
+        } finally {
+            for (Tensor image : images) {
+                image.close();
+            }
+        }
+    }
+
+    /**
+     * Runs the images through the model as one batch and splits each output node's values per image.
+     *
+     * @return
+     *  For each image, in the same order, a map from output node name to its "shape" and "values".
+     */
+    private List<Map<String, Object>> execute(TensorFlowModel current, List<Tensor> images) {
+        if (current == null) {
+            throw new IllegalStateException("TensorFlow model has not been loaded");
+        }
+
+        final int batchSize = images.size();
+        final List<Map<String, Object>> results = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            results.add(new LinkedHashMap<String, Object>());
+        }
+
+        final List<Tensor> outputs = current.run(feedNodeName, images, outputNodeNames);
+        try {
+            for (int o = 0; o < outputs.size(); o++) {
+                final Tensor output = outputs.get(o);
+                final long[] shape = output.shape();
+                if (shape.length == 0 || shape[0] != batchSize) {
+                    throw new IllegalStateException(String.format("Expected output %s to have a batch dimension of %d, instead it has shape %s",
+                            outputNodeNames.get(o), batchSize, Arrays.toString(shape)));
+                }
+                final long[] imageShape = Arrays.copyOfRange(shape, 1, shape.length);
+                final Object values = values(output);
+                final int perImage = output.numElements() / batchSize;
+                for (int i = 0; i < batchSize; i++) {
+                    final Map<String, Object> value = new LinkedHashMap<>();
+                    value.put("shape", imageShape);
+                    value.put("values", slice(values, i * perImage, perImage));
+                    results.get(i).put(outputNodeNames.get(o), value);
+                }
+            }
+        } finally {
+            for (Tensor output : outputs) {
+                output.close();
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return
+     *  A primitive array with all of the Tensor's values in row major order.
+     */
+    private static Object values(Tensor tensor) {
+        switch (tensor.dataType()) {
+            case FLOAT: {
+                final FloatBuffer buffer = FloatBuffer.allocate(tensor.numElements());
+                tensor.writeTo(buffer);
+                return buffer.array();
+            }
+            case DOUBLE: {
+                final DoubleBuffer buffer = DoubleBuffer.allocate(tensor.numElements());
+                tensor.writeTo(buffer);
+                return buffer.array();
+            }
+            case INT32: {
+                final IntBuffer buffer = IntBuffer.allocate(tensor.numElements());
+                tensor.writeTo(buffer);
+                return buffer.array();
+            }
+            case INT64: {
+                final LongBuffer buffer = LongBuffer.allocate(tensor.numElements());
+                tensor.writeTo(buffer);
+                return buffer.array();
+            }
+            default:
+                throw new IllegalStateException("Unsupported output data type " + tensor.dataType());
+        }
+    }
+
+    private static Object slice(Object values, int offset, int length) {
+        if (values instanceof float[]) {
+            return Arrays.copyOfRange((float[]) values, offset, offset + length);
+        } else if (values instanceof double[]) {
+            return Arrays.copyOfRange((double[]) values, offset, offset + length);
+        } else if (values instanceof int[]) {
+            return Arrays.copyOfRange((int[]) values, offset, offset + length);
+        }
+        return Arrays.copyOfRange((long[]) values, offset, offset + length);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdye64.processors.tensorflow;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.controller.ControllerService;
+
+@Tags({"tensorflow", "model", "registry"})
+@CapabilityDescription("Shares imported TensorFlow models, and the Session each is run through, between processors.")
+public interface TensorFlowModelRegistry extends ControllerService {
+
+    /**
+     * Returns the model for the files, loading it if no processor is using it yet or if either file has been
+     * modified since it was loaded. Every call must be matched by a call to {@link #release(TensorFlowModel)}.
+     *
+     * @param labelsPath
+     *  Labels file, or null if the model has no labels.
+     *
+     * @throws IOException
+     *  If either file can not be read.
+     * @throws IllegalArgumentException
+     *  If the graph file is not a valid TensorFlow GraphDef.
+     */
+    TensorFlowModel acquire(Path graphPath, Path labelsPath) throws IOException;
+
+    /**
+     * Gives up a model returned by {@link #acquire(Path, Path)}. The model is closed once no processor is using it
+     * and the FlowFiles still being run through it have finished.
+     */
+    void release(TensorFlowModel model);
+}
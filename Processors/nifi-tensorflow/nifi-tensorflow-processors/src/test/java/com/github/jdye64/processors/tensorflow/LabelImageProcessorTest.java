@@ -21,6 +21,8 @@ import org.apache.nifi.util.TestRunners;
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
+
 
 public class LabelImageProcessorTest {
 
@@ -36,4 +38,32 @@ public class LabelImageProcessorTest {
 
     }
 
+    @Test
+    public void testGpuMemoryFractionMustBeAFraction() {
+        testRunner.setProperty(LabelImageProcessor.TF_FROZEN_GRAPH, "graph.pb");
+        testRunner.setProperty(LabelImageProcessor.TF_LABELS_FILE, "labels.txt");
+        testRunner.assertValid();
+
+        testRunner.setProperty(LabelImageProcessor.TF_GPU_MEMORY_FRACTION, "1.5");
+        testRunner.assertNotValid();
+
+        testRunner.setProperty(LabelImageProcessor.TF_GPU_MEMORY_FRACTION, "0.5");
+        testRunner.assertValid();
+    }
+
+    @Test
+    public void testTopKOrdersByProbability() {
+        float[] probabilities = {0.05f, 0.4f, 0.01f, 0.3f, 0.2f, 0.04f};
+        assertArrayEquals(new int[] {1, 3, 4}, LabelImageProcessor.topK(probabilities, 3, 0f));
+        assertArrayEquals(new int[] {1, 3, 4, 0, 5, 2}, LabelImageProcessor.topK(probabilities, 10, 0f));
+        assertArrayEquals(new int[] {1}, LabelImageProcessor.topK(probabilities, 1, 0f));
+    }
+
+    @Test
+    public void testTopKAppliesThreshold() {
+        float[] probabilities = {0.05f, 0.4f, 0.01f, 0.3f, 0.2f, 0.04f};
+        assertArrayEquals(new int[] {1, 3}, LabelImageProcessor.topK(probabilities, 5, 0.25f));
+        assertArrayEquals(new int[0], LabelImageProcessor.topK(probabilities, 5, 0.5f));
+    }
+
 }
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdye64.processors.tensorflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class LabelResultCacheTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        LabelResultCache cache = new LabelResultCache(2, null, null);
+        cache.put("a", Collections.singletonMap("label.name", "a"));
+        cache.put("b", Collections.singletonMap("label.name", "b"));
+        assertNotNull(cache.get("a"));
+
+        cache.put("c", Collections.singletonMap("label.name", "c"));
+        assertNull(cache.get("b"));
+        assertEquals("a", cache.get("a").get("label.name"));
+        assertEquals("c", cache.get("c").get("label.name"));
+    }
+
+    @Test
+    public void testKeyDependsOnContentAndModelVersion() {
+        byte[] content = "image".getBytes(StandardCharsets.UTF_8);
+        String key = LabelResultCache.key(content, "v1", "1");
+        assertEquals(key, LabelResultCache.key(content.clone(), "v1", "1"));
+        assertFalse(key.equals(LabelResultCache.key(content, "v2", "1")));
+        assertFalse(key.equals(LabelResultCache.key(content, "v1", "5")));
+        assertFalse(key.equals(LabelResultCache.key("other".getBytes(StandardCharsets.UTF_8), "v1", "1")));
+    }
+
+    @Test
+    public void testStreamedDigestGivesTheSameKey() {
+        byte[] content = "image".getBytes(StandardCharsets.UTF_8);
+        MessageDigest digest = LabelResultCache.newDigest();
+        digest.update(content, 0, 2);
+        digest.update(content, 2, content.length - 2);
+        assertEquals(LabelResultCache.key(content, "v1", "1"), LabelResultCache.key(digest, "v1", "1"));
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdye64.processors.tensorflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class StageTimerTest {
+
+    @Test
+    public void testPercentilesAreBucketUpperBounds() {
+        StageTimer timer = new StageTimer("inference");
+        for (int i = 0; i < 99; i++) {
+            timer.record(1000);
+        }
+        timer.record(1000000);
+
+        assertEquals(100, timer.getCount());
+        assertEquals(99 * 1000 + 1000000, timer.getTotalNanos());
+        long p50 = timer.getPercentileNanos(0.5);
+        assertTrue(p50 >= 1000 && p50 < 2000);
+        assertEquals(1000000, timer.getPercentileNanos(1.0));
+    }
+
+    @Test
+    public void testReset() {
+        StageTimer timer = new StageTimer("read");
+        timer.record(0);
+        timer.record(42);
+        timer.reset();
+
+        assertEquals(0, timer.getCount());
+        assertEquals(0, timer.getPercentileNanos(0.99));
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdye64.processors.tensorflow;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.imageio.ImageIO;
+
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.Before;
+import org.junit.Test;
+import org.tensorflow.DataType;
+import org.tensorflow.Graph;
+import org.tensorflow.Output;
+import org.tensorflow.Tensor;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+
+public class TensorFlowModelProcessorTest {
+
+    private TestRunner testRunner;
+
+    @Before
+    public void init() {
+        testRunner = TestRunners.newTestRunner(TensorFlowModelProcessor.class);
+        testRunner.setProperty(LabelImageProcessor.TF_FROZEN_GRAPH, "graph.pb");
+        testRunner.setProperty(TensorFlowModelProcessor.TF_OUTPUT_NODES, "scores, boxes");
+    }
+
+    @Test
+    public void testInputScaleMustNotBeZero() {
+        testRunner.assertValid();
+
+        testRunner.setProperty(TensorFlowModelProcessor.TF_INPUT_SCALE, "0");
+        testRunner.assertNotValid();
+
+        testRunner.setProperty(TensorFlowModelProcessor.TF_INPUT_SCALE, "127.5");
+        testRunner.assertValid();
+    }
+
+    @Test
+    public void testChannelOrderMustBeRgbOrBgr() {
+        testRunner.setProperty(TensorFlowModelProcessor.TF_CHANNEL_ORDER, TensorFlowModelProcessor.CHANNEL_ORDER_BGR);
+        testRunner.assertValid();
+
+        testRunner.setProperty(TensorFlowModelProcessor.TF_CHANNEL_ORDER, "GBR");
+        testRunner.assertNotValid();
+    }
+
+    @Test
+    public void testWritesEveryOutputNodeOfTheNormalizedImage() throws IOException {
+        final Path directory = Files.createTempDirectory("tensorflow-model");
+        try {
+            final Path graph = Files.write(directory.resolve("graph.pb"), channelMeansGraph());
+            testRunner.setProperty(LabelImageProcessor.TF_FROZEN_GRAPH, graph.toString());
+            testRunner.setProperty(TensorFlowModelProcessor.TF_OUTPUT_NODES, "channels, total");
+            testRunner.setProperty(TensorFlowModelProcessor.TF_INPUT_HEIGHT, "2");
+            testRunner.setProperty(TensorFlowModelProcessor.TF_INPUT_WIDTH, "2");
+            testRunner.setProperty(TensorFlowModelProcessor.TF_INPUT_MEAN, "117");
+            testRunner.setProperty(TensorFlowModelProcessor.TF_INPUT_SCALE, "2");
+            testRunner.setProperty(TensorFlowModelProcessor.TF_CHANNEL_ORDER, TensorFlowModelProcessor.CHANNEL_ORDER_BGR);
+            testRunner.setProperty(LabelImageProcessor.TF_PREPROCESSING_ENGINE, LabelImageProcessor.PREPROCESSING_ENGINE_JAVA);
+            testRunner.setProperty(LabelImageProcessor.TF_BATCH_SIZE, "2");
+            testRunner.setProperty(LabelImageProcessor.TF_WARM_UP_ITERATIONS, "1");
+
+            testRunner.enqueue(solidPng(255, 0, 117));
+            testRunner.enqueue(solidPng(1, 117, 255));
+            testRunner.run();
+
+            testRunner.assertAllFlowFilesTransferred(TensorFlowModelProcessor.REL_SUCCESS, 2);
+            // Each channel is (value - 117) / 2, in blue, green, red order
+            assertOutput(testRunner.getFlowFilesForRelationship(TensorFlowModelProcessor.REL_SUCCESS).get(0), 0f, -58.5f, 69f);
+            assertOutput(testRunner.getFlowFilesForRelationship(TensorFlowModelProcessor.REL_SUCCESS).get(1), 69f, 0f, -58f);
+        } finally {
+            for (Path file : Files.newDirectoryStream(directory)) {
+                Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private static void assertOutput(MockFlowFile flowFile, float... channels) throws IOException {
+        flowFile.assertAttributeEquals("mime.type", "application/json");
+        final JsonNode output = new ObjectMapper().readTree(flowFile.toByteArray());
+
+        assertEquals(1, output.get("channels").get("shape").size());
+        assertEquals(3, output.get("channels").get("shape").get(0).asInt());
+        float sum = 0;
+        for (int c = 0; c < channels.length; c++) {
+            assertEquals(channels[c], output.get("channels").get("values").get(c).floatValue(), 0.001f);
+            sum += channels[c];
+        }
+
+        // Summed over the 2x2 pixels of the image, which has no dimensions left besides the batch
+        assertEquals(0, output.get("total").get("shape").size());
+        assertEquals(4 * sum, output.get("total").get("values").get(0).floatValue(), 0.001f);
+    }
+
+    /**
+     * @return
+     *  GraphDef with a float "input" and two outputs: "channels", the mean of each channel, and "total", the sum of all
+     *  values of each image.
+     */
+    private static byte[] channelMeansGraph() {
+        try (Graph g = new Graph()) {
+            final Output input = g.opBuilder("Placeholder", "input").setAttr("dtype", DataType.FLOAT).build().output(0);
+            g.opBuilder("Mean", "channels").addInput(input).addInput(constant(g, "pixel_axes", new int[] {1, 2})).build();
+            g.opBuilder("Sum", "total").addInput(input).addInput(constant(g, "image_axes", new int[] {1, 2, 3})).build();
+            return g.toGraphDef();
+        }
+    }
+
+    private static Output constant(Graph g, String name, Object value) {
+        try (Tensor t = Tensor.create(value)) {
+            return g.opBuilder("Const", name).setAttr("dtype", t.dataType()).setAttr("value", t).build().output(0);
+        }
+    }
+
+    private static byte[] solidPng(int red, int green, int blue) throws IOException {
+        final BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, (red << 16) | (green << 8) | blue);
+            }
+        }
+        final ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        return png.toByteArray();
+    }
+}
@@ -16,9 +16,8 @@
  */
 package com.jeremydyer.processors.tesseract;
 
-import net.sourceforge.tess4j.ITesseract;
-import net.sourceforge.tess4j.Tesseract;
-import net.sourceforge.tess4j.Tesseract1;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.annotation.lifecycle.OnStopped;
 import org.apache.nifi.components.PropertyDescriptor;
 import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.processor.*;
@@ -27,13 +26,20 @@ import org.apache.nifi.annotation.documentation.Tags;
 import org.apache.nifi.processor.exception.ProcessException;
 import org.apache.nifi.processor.io.StreamCallback;
 import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.nifi.processors.ocr.engine.OcrEngine;
+import org.apache.nifi.processors.ocr.engine.OcrEnginePool;
+import org.apache.nifi.processors.ocr.engine.OcrEngineSpec;
+import org.apache.nifi.processors.ocr.engine.OcrException;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 @Tags({"ocr", "tesseract", "image"})
 @CapabilityDescription("Reads the input image and attempts to perform OCR on the image and output the text " +
@@ -63,6 +69,11 @@ public class TesseractOCR extends AbstractProcessor {
 
     private Set<Relationship> relationships;
 
+    //Engines keep their language loaded between FlowFiles, one pool per installation directory
+    private final ConcurrentMap<OcrEngineSpec, OcrEnginePool> enginePools = new ConcurrentHashMap<>();
+    private volatile int enginePoolSize;
+    private volatile OcrEnginePool.Limit engineLimit;   // Shared by the pools of every directory.
+
     @Override
     protected void init(final ProcessorInitializationContext context) {
         final List<PropertyDescriptor> descriptors = new ArrayList<PropertyDescriptor>();
@@ -89,6 +100,32 @@ public class TesseractOCR extends AbstractProcessor {
     private final static String DEFAULT_PAGE_SEG_MODE = "3";
     private final static String DEFAULT_LANG = "eng";
 
+    @OnScheduled
+    public void onScheduled(final ProcessContext context) {
+        //One engine per concurrent task, a task never needs more than one at a time
+        enginePoolSize = context.getMaxConcurrentTasks();
+        //Which also bounds the engines of all directories together, idle engines of one directory make room for another's
+        engineLimit = new OcrEnginePool.Limit(enginePoolSize);
+
+        //When the directory is the same for every FlowFile its engines are loaded now rather than by the first FlowFiles
+        if (!context.getProperty(TESSERACT_INSTALL_DIR).isExpressionLanguagePresent()) {
+            final OcrEngineSpec spec = createSpec(context.getProperty(TESSERACT_INSTALL_DIR).getValue());
+            try {
+                getEnginePool(spec).prestart(enginePoolSize);
+            } catch (OcrException ex) {
+                throw new ProcessException("Unable to initialize Tesseract engines for " + spec, ex);
+            }
+        }
+    }
+
+    @OnStopped
+    public void onStopped() {
+        for (OcrEnginePool pool : enginePools.values()) {
+            pool.close();
+        }
+        enginePools.clear();
+    }
+
     @Override
     public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
         final FlowFile flowFile = session.get();
@@ -96,25 +133,69 @@ public class TesseractOCR extends AbstractProcessor {
             return;
         }
 
-        //Reads in the image data and runs it through Tesseract for OCR
-        FlowFile ff = session.write(flowFile, new StreamCallback() {
-            @Override
-            public void process(InputStream inputStream, OutputStream outputStream) throws IOException {
-                ITesseract instance = new Tesseract();
-                instance.setLanguage(DEFAULT_LANG);
-                instance.setDatapath(context.getProperty(TESSERACT_INSTALL_DIR).evaluateAttributeExpressions(flowFile).getValue());
-                instance.setPageSegMode(Integer.parseInt(DEFAULT_PAGE_SEG_MODE));
-
-                try {
-                    BufferedImage imBuff = ImageIO.read(inputStream);
-                    outputStream.write(instance.doOCR(imBuff).getBytes());
-                } catch (Exception ex) {
-                    getLogger().error(ex.getMessage());
-                    session.transfer(flowFile, REL_FAILURE);
+        final OcrEnginePool pool = getEnginePool(createSpec(context.getProperty(TESSERACT_INSTALL_DIR).evaluateAttributeExpressions(flowFile).getValue()));
+
+        //Reads in the image data and runs it through a pooled Tesseract engine for OCR
+        final FlowFile ff;
+        try {
+            ff = session.write(flowFile, new StreamCallback() {
+                @Override
+                public void process(InputStream inputStream, OutputStream outputStream) throws IOException {
+                    final BufferedImage imBuff = ImageIO.read(inputStream);
+                    if (imBuff == null) {
+                        throw new IOException("No image reader is available for the content");
+                    }
+
+                    try {
+                        final OcrEngine engine = pool.borrow();
+                        try {
+                            outputStream.write(engine.recognize(imBuff, false).getText().getBytes(StandardCharsets.UTF_8));
+                        } finally {
+                            pool.giveBack(engine);
+                        }
+                    } catch (OcrException ex) {
+                        throw new IOException(ex.getMessage(), ex);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for a Tesseract engine", ex);
+                    }
                 }
+            });
+        } catch (ProcessException ex) {
+            if (Thread.currentThread().isInterrupted()) {
+                session.rollback();
+                return;
             }
-        });
+            getLogger().error("Unable to perform OCR on {}", new Object[] {flowFile, ex});
+            session.transfer(flowFile, REL_FAILURE);
+            return;
+        }
 
         session.transfer(ff, REL_SUCCESS);
     }
+
+    private static OcrEngineSpec createSpec(final String datapath) {
+        return new OcrEngineSpec(datapath, DEFAULT_LANG, Integer.parseInt(DEFAULT_PAGE_SEG_MODE),
+                Collections.<String, String>emptyMap(), true);
+    }
+
+    private OcrEnginePool getEnginePool(final OcrEngineSpec spec) {
+        OcrEnginePool pool = enginePools.get(spec);
+        if (pool == null) {
+            final OcrEnginePool created = new OcrEnginePool(new OcrEnginePool.Factory() {
+                @Override
+                public OcrEngine create() throws OcrException {
+                    return spec.createEngine();
+                }
+            }, enginePoolSize, engineLimit);
+            pool = enginePools.putIfAbsent(spec, created);
+            if (pool == null) {
+                pool = created;
+            } else {
+                //Lost the race, unregisters it from the engine limit
+                created.close();
+            }
+        }
+        return pool;
+    }
 }
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jeremydyer.processors.tesseract;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TesseractOCRTest {
+
+    private TestRunner testRunner;
+
+    @Before
+    public void init() {
+        testRunner = TestRunners.newTestRunner(TesseractOCR.class);
+        //Expression Language keeps the engines from being created when the processor is scheduled
+        testRunner.setProperty(TesseractOCR.TESSERACT_INSTALL_DIR, "${literal('/usr/share/tesseract-ocr/tessdata/')}");
+    }
+
+    @Test
+    public void testNonImageIsOnlyRoutedToFailure() {
+        testRunner.enqueue("not an image".getBytes(StandardCharsets.UTF_8));
+        testRunner.run();
+
+        testRunner.assertAllFlowFilesTransferred(TesseractOCR.REL_FAILURE, 1);
+        testRunner.assertTransferCount(TesseractOCR.REL_SUCCESS, 0);
+        testRunner.getFlowFilesForRelationship(TesseractOCR.REL_FAILURE).get(0).assertContentEquals("not an image");
+    }
+}